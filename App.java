@@ -6,6 +6,23 @@ public class App {
     private static final String DATA_PATH = "data/phonebook.ser";
 
     public static void main(String[] args) {
+        if (args.length > 0 && "--read-only".equals(args[0])) {
+            browseReadOnly();
+            return;
+        }
+        if (args.length > 0 && "--import".equals(args[0])) {
+            if (args.length < 2) {
+                System.err.println("Usage: App --import <file.csv|file.vcf> [skip|overwrite|report]");
+                return;
+            }
+        }
+        if (args.length > 0 && "--export".equals(args[0])) {
+            if (args.length < 2) {
+                System.err.println("Usage: App --export <file.csv|file.vcf>");
+                return;
+            }
+        }
+
         PhoneDirectory dir;
         try {
             dir = PhoneDirectory.loadFromFile(new File(DATA_PATH));
@@ -14,8 +31,26 @@ public class App {
             System.out.println("No saved directory found, starting new.");
             dir = new PhoneDirectory();
         } catch (Exception e) {
+            // the file and its log still hold the saved contacts: journaling or saving an
+            // empty directory over them would lose them, so leave both untouched
             System.err.println("Failed to load directory: " + e.getMessage());
-            dir = new PhoneDirectory();
+            return;
+        }
+
+        try {
+            dir.enableJournal(new File(DATA_PATH));
+        } catch (java.io.IOException e) {
+            System.err.println("Journal unavailable, saving full snapshots: " + e.getMessage());
+        }
+        long savedGeneration = dir.getGeneration();
+
+        if (args.length > 1 && "--import".equals(args[0])) {
+            importFile(dir, new File(args[1]), args.length > 2 ? args[2] : "skip");
+            return;
+        }
+        if (args.length > 1 && "--export".equals(args[0])) {
+            exportFile(dir, new File(args[1]));
+            return;
         }
 
         try {
@@ -30,6 +65,10 @@ public class App {
         System.out.println("Search results for '555': " + dir.search("555"));
         System.out.println("Search results for 'Alice': " + dir.search("Alice"));
 
+        if (dir.getGeneration() == savedGeneration) {
+            System.out.println("No changes to save.");
+            return;
+        }
         try {
             dir.saveToFile(new File(DATA_PATH));
             System.out.println("Saved directory to " + DATA_PATH);
@@ -37,4 +76,49 @@ public class App {
             System.err.println("Failed to save: " + e.getMessage());
         }
     }
+
+    private static void importFile(PhoneDirectory dir, File file, String duplicates) {
+        ContactImporter.DuplicatePolicy policy;
+        try {
+            policy = ContactImporter.DuplicatePolicy.valueOf(duplicates.toUpperCase(java.util.Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown duplicate handling '" + duplicates + "', expected skip, overwrite or report");
+            return;
+        }
+        try {
+            ContactImporter.Result result = new ContactImporter(policy).importFile(file, dir, null);
+            System.out.println("Imported " + file + ": " + result);
+            if (!result.getDuplicateNames().isEmpty()) {
+                System.out.println("Already in the directory: " + String.join(", ", result.getDuplicateNames())
+                        + (result.getDuplicates() > result.getDuplicateNames().size() ? ", ..." : ""));
+            }
+            dir.saveToFile(new File(DATA_PATH));
+            System.out.println("Saved directory to " + DATA_PATH);
+        } catch (java.io.IOException e) {
+            System.err.println("Import failed: " + e.getMessage());
+        }
+    }
+
+    private static void exportFile(PhoneDirectory dir, File file) {
+        try {
+            long start = System.nanoTime();
+            int written = new ContactExporter(ContactImporter.Format.of(file)).exportFile(dir.sortedView(), file, null);
+            System.out.printf("Exported %,d contacts to %s in %.1f s%n", written, file, (System.nanoTime() - start) / 1e9);
+        } catch (java.io.IOException e) {
+            System.err.println("Export failed: " + e.getMessage());
+        }
+    }
+
+    // Maps the saved snapshot instead of loading it, so startup does not depend on its size
+    private static void browseReadOnly() {
+        try (MappedDirectory dir = MappedDirectory.open(new File(DATA_PATH))) {
+            System.out.println("Opened directory with " + dir.size() + " contacts (read-only).");
+            System.out.println("Lookup 'Alice Smith': " + dir.getByName("Alice Smith"));
+            System.out.println("Search results for '555': " + dir.search("555"));
+        } catch (java.io.FileNotFoundException | java.nio.file.NoSuchFileException e) {
+            System.out.println("No saved directory found.");
+        } catch (java.io.IOException e) {
+            System.err.println("Failed to open directory: " + e.getMessage());
+        }
+    }
 }
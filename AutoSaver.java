@@ -0,0 +1,190 @@
+package com.example.phonedir;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves a window's directory once edits stop. Every change restarts a quiet period and
+ * the directory is saved when it ends, so a burst of edits or a whole import costs one
+ * write; a steady stream of edits is still saved at least every {@link #MAX_DELAY_MS}
+ * milliseconds. A save is skipped when the directory's
+ * {@link PhoneDirectory#getGeneration() generation} has not moved since the last one.
+ * A {@link ConcurrentPhoneDirectory} is saved on a worker thread; any other directory is
+ * only safe on the event thread, so it is saved there. Except for the change listener,
+ * all methods must be called on the event thread, and the view hears back on it.
+ */
+final class AutoSaver implements PhoneDirectory.DirectoryListener {
+    /** A window told how saves went. */
+    interface View {
+        /** A save asked for with {@link AutoSaver#saveNow()} went through. */
+        void directorySaved(File file);
+        /** A save failed. Failed autosaves are reported once, until a save succeeds again. */
+        void directorySaveFailed(File file, IOException e);
+    }
+
+    static final int DEFAULT_QUIET_MS = 1_000;
+    static final int MAX_DELAY_MS = 30_000;
+
+    private final PhoneDirectory directory;
+    private final File file;
+    private final View view;
+    private final int quietMillis;
+    private final Timer timer;
+    // null when saves must stay on the event thread (a directory that is not thread-safe)
+    private final ExecutorService executor;
+
+    // Changes arrive on whatever thread made them, so these are guarded by this
+    private boolean scheduled;
+    private long firstChange, lastChange;
+
+    // Generation of the last save that went through; written by one save at a time
+    private volatile long savedGeneration;
+    private boolean started, closed, failing;
+
+    AutoSaver(PhoneDirectory directory, File file, int quietMillis, View view) {
+        if (quietMillis < 0) throw new IllegalArgumentException("quietMillis must not be negative");
+        this.directory = directory;
+        this.file = file;
+        this.quietMillis = quietMillis;
+        this.view = view;
+        timer = new Timer(quietMillis, e -> tick());
+        timer.setRepeats(false);
+        executor = directory instanceof ConcurrentPhoneDirectory ? Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "directory-autosave");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    /**
+     * Starts saving changes made from now on. Call it once the directory is loaded and
+     * journaled, so the contents it starts from are the ones on disk. Changes made since
+     * the journal was enabled, by other threads, are saved right away.
+     */
+    void start() {
+        if (started || closed) return;
+        started = true;
+        savedGeneration = directory.getJournaledGeneration();
+        directory.addDirectoryListener(this);
+        if (directory.getGeneration() != savedGeneration) contactsChanged(Collections.emptyList());
+    }
+
+    /**
+     * Starts saving a directory that failed to load, saving it over the file right away.
+     * Call it only once the user chose to replace the file; until either start method is
+     * called, nothing is written to it.
+     */
+    void startReplacing() {
+        if (started || closed) return;
+        started = true;
+        // no generation matches, so the first save goes through even before any edit
+        savedGeneration = Long.MIN_VALUE;
+        directory.addDirectoryListener(this);
+        submit(true);
+    }
+
+    @Override
+    public void contactsChanged(List<DirectoryEvent> events) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            lastChange = now;
+            if (scheduled) return;
+            scheduled = true;
+            firstChange = now;
+        }
+        SwingUtilities.invokeLater(() -> {
+            timer.setInitialDelay(quietMillis);
+            timer.restart();
+        });
+    }
+
+    // Saves once the changes have been quiet for the whole period, or have gone on too long
+    private void tick() {
+        long wait;
+        synchronized (this) {
+            long due = Math.min(lastChange + TimeUnit.MILLISECONDS.toNanos(quietMillis),
+                    firstChange + TimeUnit.MILLISECONDS.toNanos(Math.max(quietMillis, MAX_DELAY_MS)));
+            wait = due - System.nanoTime();
+            if (wait <= 0) scheduled = false;
+        }
+        if (wait > 0) {
+            timer.setInitialDelay((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+            timer.restart();
+        } else if (!closed) {
+            submit(false);
+        }
+    }
+
+    /** Saves right away without blocking the event thread; the view is told either way. */
+    void saveNow() {
+        if (closed) return;
+        if (!started) {
+            view.directorySaveFailed(file, new IOException("Nothing is saved until the directory has loaded"));
+            return;
+        }
+        submit(true);
+    }
+
+    /**
+     * Stops saving in the background, waits for a save under way and then saves whatever
+     * is left on the calling thread. Call it when the window closes. Before {@link #start()}
+     * there is nothing of ours to save, so it only stops.
+     */
+    void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        directory.removeDirectoryListener(this);
+        timer.stop();
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (started && directory.getGeneration() != savedGeneration) {
+            directory.saveToFile(file);
+        }
+    }
+
+    private void submit(boolean requested) {
+        if (executor == null) {
+            save(requested);
+        } else {
+            executor.execute(() -> save(requested));
+        }
+    }
+
+    private void save(boolean requested) {
+        long generation = directory.getGeneration();
+        IOException failure = null;
+        if (generation != savedGeneration) {
+            try {
+                directory.saveToFile(file);
+                savedGeneration = generation;
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        IOException result = failure;
+        SwingUtilities.invokeLater(() -> report(result, requested));
+    }
+
+    private void report(IOException failure, boolean requested) {
+        if (failure == null) {
+            failing = false;
+            if (requested) view.directorySaved(file);
+        } else {
+            if (requested || !failing) view.directorySaveFailed(file, failure);
+            failing = true;
+        }
+    }
+}
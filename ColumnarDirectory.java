@@ -0,0 +1,471 @@
+package com.example.phonedir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Prototype of a read-only directory that stores its contacts by column instead of as one
+ * object each. Only {@code ColumnarBenchmark} uses it, to weigh it against
+ * {@link PhoneDirectory}; nothing in the application does. For each of name, phone and
+ * email, the UTF-8 bytes of every contact are packed into one array,
+ * with a second array recording where each contact's bytes end. The favorite and blocked
+ * flags are bit sets. A million contacts take a dozen arrays rather than millions of objects,
+ * and searches and flag filters run front to back over those arrays without creating a
+ * {@link Contact}. Results are lists of row numbers that create each contact the first time
+ * it is read, so a search that matches half the directory costs a few bytes per match until
+ * its results are shown. Those contacts hold only their row: every field is read from the
+ * columns when asked for. Their flags cannot be set, as nothing would save the change, so
+ * setting one throws {@link UnsupportedOperationException}. Like {@link PhoneDirectory},
+ * it is not thread-safe.
+ */
+public final class ColumnarDirectory {
+    private static final Comparator<Contact> BY_KEY = Comparator.comparing(c -> PhoneDirectory.normalizeKey(c.getName()));
+
+    // Rows are in name order; while the columns are being built they are in key order, as in a snapshot
+    private final Column names = new Column();
+    private final Column phones = new Column();
+    private final Column emails = new Column();
+    private final BitSet favorites = new BitSet();
+    private final BitSet blocked = new BitSet();
+    // Rows with a non-ASCII name, phone or email; searches decode these instead of folding A-Z
+    private final BitSet nonAscii = new BitSet();
+    // Whether lowercasing in the default locale is plain A-Z folding; it is not in Turkish
+    private final boolean asciiLowercase =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toLowerCase().equals("abcdefghijklmnopqrstuvwxyz");
+    // Rows by key order, for getByName; null while building
+    private int[] byKey;
+    private int size;
+
+    private ColumnarDirectory() { }
+
+    /** Copies the contacts of {@code directory} into columns. */
+    public static ColumnarDirectory of(PhoneDirectory directory) {
+        if (directory == null) throw new IllegalArgumentException("directory must not be null");
+        List<Contact> all = directory.listAll();
+        all.sort(BY_KEY);
+        ColumnarDirectory dir = new ColumnarDirectory();
+        for (Contact c : all) dir.append(c);
+        return dir.inNameOrder();
+    }
+
+    /**
+     * Loads a file saved by {@link PhoneDirectory#saveToFile(File)}, compressed or not, with
+     * the changes journaled next to it, streaming the snapshot straight into the columns. The
+     * file and the journal are only read, never repaired, so another process may keep using
+     * them. Legacy serialized files are deserialized whole first.
+     */
+    public static ColumnarDirectory load(File file) throws IOException, ClassNotFoundException {
+        if (file == null) throw new IllegalArgumentException("file must not be null");
+        ColumnarDirectory dir = new ColumnarDirectory();
+        long epoch;
+        try (BufferedInputStream stored = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+            BufferedInputStream in = PhoneDirectory.plain(stored, CompressedSnapshot.codecOf(stored));
+            if (DirectorySnapshot.isSnapshot(in)) {
+                DirectorySnapshot.Reader reader = new DirectorySnapshot.Reader(in);
+                epoch = reader.epoch();
+                Contact c;
+                while ((c = reader.next()) != null) dir.append(c);
+            } else {
+                PhoneDirectory legacy = PhoneDirectory.readSerialized(in);
+                epoch = legacy.journalEpoch();
+                // in key order, as a snapshot would have them
+                List<Contact> all = legacy.listAll();
+                all.sort(BY_KEY);
+                for (Contact c : all) dir.append(c);
+            }
+        }
+        return dir.withJournal(file, epoch);
+    }
+
+    private ColumnarDirectory withJournal(File file, long epoch) throws IOException {
+        // Journaled contacts by key; a null value marks a removal
+        TreeMap<String, Contact> changes = new TreeMap<>();
+        DirectoryJournal.read(file, epoch, new DirectoryJournal.Target() {
+            @Override
+            public void put(Contact c) {
+                changes.put(PhoneDirectory.normalizeKey(c.getName()), c);
+            }
+
+            @Override
+            public void remove(String name) {
+                changes.put(PhoneDirectory.normalizeKey(name), null);
+            }
+
+            @Override
+            public void setFlags(String name, boolean favorite, boolean isBlocked) {
+                String key = PhoneDirectory.normalizeKey(name);
+                if (changes.containsKey(key)) {
+                    Contact c = changes.get(key);
+                    if (c != null) {
+                        c.setFavorite(favorite);
+                        c.setBlocked(isBlocked);
+                    }
+                    return;
+                }
+                int row = find(key);
+                if (row >= 0) {
+                    favorites.set(row, favorite);
+                    blocked.set(row, isBlocked);
+                }
+            }
+        });
+        if (changes.isEmpty()) return inNameOrder();
+        // Both the rows and the changes are in key order, so one merge rebuilds the columns
+        ColumnarDirectory merged = new ColumnarDirectory();
+        Iterator<Map.Entry<String, Contact>> it = changes.entrySet().iterator();
+        Map.Entry<String, Contact> next = it.hasNext() ? it.next() : null;
+        for (int row = 0; row < size; row++) {
+            String key = PhoneDirectory.normalizeKey(names.get(row));
+            while (next != null && next.getKey().compareTo(key) < 0) {
+                if (next.getValue() != null) merged.append(next.getValue());
+                next = it.hasNext() ? it.next() : null;
+            }
+            if (next != null && next.getKey().equals(key)) {
+                if (next.getValue() != null) merged.append(next.getValue());
+                next = it.hasNext() ? it.next() : null;
+            } else {
+                merged.copy(this, row);
+            }
+        }
+        for (; next != null; next = it.hasNext() ? it.next() : null) {
+            if (next.getValue() != null) merged.append(next.getValue());
+        }
+        return merged.inNameOrder();
+    }
+
+    // Copies rows built in key order into name order, which is nearly the same, so the
+    // sort is close to linear; the key order is kept as the index getByName searches
+    private ColumnarDirectory inNameOrder() {
+        String[] byRow = new String[size];
+        Integer[] order = new Integer[size];
+        for (int row = 0; row < size; row++) {
+            byRow[row] = names.get(row);
+            order[row] = row;
+        }
+        Arrays.sort(order, (a, b) -> PhoneDirectory.NAME_ORDER.compare(byRow[a], byRow[b]));
+        ColumnarDirectory sorted = new ColumnarDirectory();
+        sorted.byKey = new int[size];
+        for (int row = 0; row < size; row++) {
+            sorted.copy(this, order[row]);
+            sorted.byKey[order[row]] = row;
+        }
+        sorted.trim();
+        return sorted;
+    }
+
+    private void append(Contact c) {
+        int row = size++;
+        names.add(c.getName());
+        phones.add(c.getPhoneNumber());
+        emails.add(c.getEmail());
+        favorites.set(row, c.isFavorite());
+        blocked.set(row, c.isBlocked());
+        nonAscii.set(row, !names.isAscii(row) || !phones.isAscii(row) || !emails.isAscii(row));
+    }
+
+    private void copy(ColumnarDirectory from, int row) {
+        int to = size++;
+        names.copy(from.names, row);
+        phones.copy(from.phones, row);
+        emails.copy(from.emails, row);
+        favorites.set(to, from.favorites.get(row));
+        blocked.set(to, from.blocked.get(row));
+        nonAscii.set(to, from.nonAscii.get(row));
+    }
+
+    private void trim() {
+        names.trim(size);
+        phones.trim(size);
+        emails.trim(size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Contact getByName(String name) {
+        if (name == null) return null;
+        int row = find(PhoneDirectory.normalizeKey(name));
+        return row < 0 ? null : new Row(this, row);
+    }
+
+    private int find(String key) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int row = byKey == null ? mid : byKey[mid];
+            int cmp = PhoneDirectory.normalizeKey(names.get(row)).compareTo(key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /** All contacts in alphabetical order, in a read-only list. */
+    public List<Contact> listAll() {
+        BitSet all = new BitSet(size);
+        all.set(0, size);
+        return rows(all);
+    }
+
+    /** Same results as {@link PhoneDirectory#search(String)}, in a read-only list. */
+    public List<Contact> search(String query) {
+        return search(query, false, false);
+    }
+
+    /**
+     * Same as {@link #search(String)}, keeping only favorites and dropping blocked contacts as
+     * asked. The flag filters are applied to the bit sets first, so only the rows left are
+     * scanned; an empty query skips the scan, so {@code search("", true, false)} lists the
+     * favorites.
+     */
+    public List<Contact> search(String query, boolean favoritesOnly, boolean hideBlocked) {
+        if (query == null) return new ArrayList<>();
+        BitSet candidates = new BitSet(size);
+        if (favoritesOnly) {
+            candidates.or(favorites);
+        } else {
+            candidates.set(0, size);
+        }
+        if (hideBlocked) candidates.andNot(blocked);
+        return rows(query.isEmpty() ? candidates : matching(candidates, query.toLowerCase()));
+    }
+
+    private BitSet matching(BitSet candidates, String lowerQuery) {
+        BitSet hits = new BitSet(size);
+        BitSet decoded = (BitSet) candidates.clone();
+        if (asciiLowercase) {
+            decoded.and(nonAscii);
+            byte[] q = lowerQuery.getBytes(StandardCharsets.UTF_8);
+            // folded ASCII text cannot contain anything else
+            if (Column.isAscii(q, 0, q.length)) {
+                BitSet folded = (BitSet) candidates.clone();
+                folded.andNot(nonAscii);
+                names.scan(q, folded, hits);
+                phones.scan(q, folded, hits);
+                emails.scan(q, folded, hits);
+            }
+        }
+        for (int row = decoded.nextSetBit(0); row >= 0; row = decoded.nextSetBit(row + 1)) {
+            if (contains(names.get(row), lowerQuery) || contains(phones.get(row), lowerQuery)
+                    || contains(emails.get(row), lowerQuery)) {
+                hits.set(row);
+            }
+        }
+        return hits;
+    }
+
+    private static boolean contains(String value, String lowerQuery) {
+        return value != null && value.toLowerCase().contains(lowerQuery);
+    }
+
+    // Rows are in name order, so the set bits already are too
+    private List<Contact> rows(BitSet rows) {
+        return new Rows(this, rows.stream().toArray());
+    }
+
+    /** Counts over the columns, the same as {@link PhoneDirectory#stats()} gives. This is O(n). */
+    public DirectoryStats stats() {
+        int[] initials = new int[DirectoryStats.INITIALS];
+        for (int row = 0; row < size; row++) initials[names.initialIndex(row)]++;
+        return new DirectoryStats(size, favorites.cardinality(), blocked.cardinality(),
+                phones.present.cardinality(), emails.present.cardinality(), initials);
+    }
+
+    /**
+     * One text field of every row: the UTF-8 bytes back to back, where each row's bytes end,
+     * and which rows have a value at all.
+     */
+    private static final class Column {
+        byte[] bytes = new byte[1 << 12];
+        int length;
+        int[] ends = new int[1 << 8];
+        int rows;
+        final BitSet present = new BitSet();
+
+        void add(String value) {
+            if (value != null) {
+                byte[] b = value.getBytes(StandardCharsets.UTF_8);
+                ensureBytes(b.length);
+                System.arraycopy(b, 0, bytes, length, b.length);
+                length += b.length;
+                present.set(rows);
+            }
+            end();
+        }
+
+        void copy(Column from, int row) {
+            if (from.present.get(row)) {
+                int start = from.start(row);
+                int n = from.ends[row] - start;
+                ensureBytes(n);
+                System.arraycopy(from.bytes, start, bytes, length, n);
+                length += n;
+                present.set(rows);
+            }
+            end();
+        }
+
+        private void ensureBytes(int n) {
+            if (length + n > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + n));
+        }
+
+        private void end() {
+            if (rows == ends.length) ends = Arrays.copyOf(ends, rows * 2);
+            ends[rows++] = length;
+        }
+
+        void trim(int size) {
+            bytes = Arrays.copyOf(bytes, length);
+            ends = Arrays.copyOf(ends, size);
+        }
+
+        int start(int row) {
+            return row == 0 ? 0 : ends[row - 1];
+        }
+
+        String get(int row) {
+            if (!present.get(row)) return null;
+            int start = start(row);
+            return new String(bytes, start, ends[row] - start, StandardCharsets.UTF_8);
+        }
+
+        boolean isAscii(int row) {
+            return isAscii(bytes, start(row), ends[row]);
+        }
+
+        static boolean isAscii(byte[] b, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (b[i] < 0) return false;
+            }
+            return true;
+        }
+
+        // Marks the given rows whose value contains q, folding A-Z; q must be lowercase ASCII
+        void scan(byte[] q, BitSet rows, BitSet hits) {
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                if (!hits.get(row) && present.get(row) && contains(start(row), ends[row], q)) hits.set(row);
+            }
+        }
+
+        private boolean contains(int from, int to, byte[] q) {
+            int last = to - q.length;
+            outer:
+            for (int i = from; i <= last; i++) {
+                for (int j = 0; j < q.length; j++) {
+                    byte b = bytes[i + j];
+                    if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+                    if (b != q[j]) continue outer;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        // Same slot as DirectoryStats.initialIndex(String): bytes that trim() skips are single-byte in UTF-8
+        int initialIndex(int row) {
+            for (int i = start(row); i < ends[row]; i++) {
+                int b = bytes[i] & 0xFF;
+                if (b > ' ') return b < 0x80 ? DirectoryStats.initialIndex((char) b) : DirectoryStats.OTHER_INITIAL;
+            }
+            return DirectoryStats.OTHER_INITIAL;
+        }
+    }
+
+    /**
+     * Read-only list of rows that creates each row's contact when it is first read and then
+     * keeps it, so reading an element twice gives the same contact.
+     */
+    private static final class Rows extends AbstractList<Contact> implements RandomAccess {
+        private final ColumnarDirectory dir;
+        private final int[] rows;
+        private final Contact[] contacts;
+
+        Rows(ColumnarDirectory dir, int[] rows) {
+            this.dir = dir;
+            this.rows = rows;
+            this.contacts = new Contact[rows.length];
+        }
+
+        @Override
+        public Contact get(int index) {
+            Contact c = contacts[index];
+            if (c == null) {
+                c = new Row(dir, rows[index]);
+                contacts[index] = c;
+            }
+            return c;
+        }
+
+        @Override
+        public int size() {
+            return rows.length;
+        }
+    }
+
+    /** A contact that is only a row number: its fields are decoded from the columns on each read. */
+    private static final class Row extends Contact {
+        private static final long serialVersionUID = 1L;
+
+        private final transient ColumnarDirectory dir;
+        private final int row;
+
+        Row(ColumnarDirectory dir, int row) {
+            this.dir = dir;
+            this.row = row;
+        }
+
+        @Override
+        public String getName() { return dir.names.get(row); }
+
+        @Override
+        public String getPhoneNumber() { return dir.phones.get(row); }
+
+        @Override
+        public String getEmail() { return dir.emails.get(row); }
+
+        @Override
+        String nameKey() { return getName().toLowerCase(); }
+
+        @Override
+        String phoneKey() { return lower(getPhoneNumber()); }
+
+        @Override
+        String emailKey() { return lower(getEmail()); }
+
+        private static String lower(String s) {
+            return s == null ? null : s.toLowerCase();
+        }
+
+        @Override
+        public boolean isFavorite() { return dir.favorites.get(row); }
+
+        @Override
+        public boolean isBlocked() { return dir.blocked.get(row); }
+
+        @Override
+        public void setFavorite(boolean favorite) {
+            throw new UnsupportedOperationException("Columnar contacts are read-only");
+        }
+
+        @Override
+        public void setBlocked(boolean blocked) {
+            throw new UnsupportedOperationException("Columnar contacts are read-only");
+        }
+
+        // Serialized as a plain contact; the columns do not travel with it
+        private Object writeReplace() {
+            Contact c = new Contact(getName(), getPhoneNumber(), getEmail());
+            c.setFavorite(isFavorite());
+            c.setBlocked(isBlocked());
+            return c;
+        }
+    }
+}
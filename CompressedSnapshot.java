@@ -0,0 +1,192 @@
+package com.example.phonedir;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Container for a {@link DirectorySnapshot} compressed by a {@link SnapshotCodec}. Layout
+ * (version 1, big-endian):
+ * <pre>
+ *   header   int magic "PDIZ", byte version, byte codec id
+ *   chunks   int raw length (1..CHUNK_SIZE), int stored length, stored bytes
+ *   end      int 0
+ * </pre>
+ * The chunks hold the plain snapshot stream, footer and all, cut at every
+ * {@link #CHUNK_SIZE} bytes. A chunk whose stored length equals its raw length did not
+ * compress and is stored as is. Chunks are independent, so writing and reading need one
+ * chunk's worth of buffers whatever the size of the directory.
+ */
+final class CompressedSnapshot {
+    static final int MAGIC = 0x5044495A; // "PDIZ"
+    static final byte VERSION = 1;
+    static final int CHUNK_SIZE = 1 << 18;
+    static final int HEADER_BYTES = 6;
+
+    private static final Map<Integer, SnapshotCodec> CODECS = new HashMap<>();
+
+    static {
+        register(new DeflateCodec());
+    }
+
+    private CompressedSnapshot() { }
+
+    static synchronized void register(SnapshotCodec codec) {
+        int id = codec.id();
+        if (id < 1 || id > 255) throw new IllegalArgumentException("Codec id must be 1 to 255: " + id);
+        SnapshotCodec known = CODECS.get(id);
+        // any instance of a registered class will do, whatever its settings: they only affect writing
+        if (known != null && known.getClass() != codec.getClass()) {
+            throw new IllegalArgumentException("Codec id " + id + " is taken by " + known.name());
+        }
+        CODECS.putIfAbsent(id, codec);
+    }
+
+    static synchronized SnapshotCodec codec(int id) {
+        return CODECS.get(id);
+    }
+
+    /**
+     * Returns the codec of the compressed snapshot the stream starts with, or null if it
+     * does not start with one; the stream is reset either way.
+     */
+    static SnapshotCodec codecOf(BufferedInputStream in) throws IOException {
+        in.mark(HEADER_BYTES);
+        byte[] head = new byte[HEADER_BYTES];
+        int n = in.readNBytes(head, 0, HEADER_BYTES);
+        in.reset();
+        if (n < HEADER_BYTES || ((head[0] & 0xFF) << 24 | (head[1] & 0xFF) << 16 | (head[2] & 0xFF) << 8 | (head[3] & 0xFF)) != MAGIC) {
+            return null;
+        }
+        if (head[4] != VERSION) throw new IOException("Unsupported compressed snapshot version: " + head[4]);
+        SnapshotCodec codec = codec(head[5] & 0xFF);
+        if (codec == null) throw new IOException("Unknown snapshot codec: " + (head[5] & 0xFF));
+        return codec;
+    }
+
+    /**
+     * Compresses what is written to it chunk by chunk. {@link #finish()} must be called
+     * after the last byte; the target stream stays open.
+     */
+    static final class Writer extends OutputStream {
+        private final DataOutputStream out;
+        private final SnapshotCodec codec;
+        private final byte[] raw = new byte[CHUNK_SIZE];
+        private final byte[] packed = new byte[CHUNK_SIZE];
+        private int length;
+
+        Writer(OutputStream out, SnapshotCodec codec) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.codec = codec;
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+            this.out.writeByte(codec.id());
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (length == CHUNK_SIZE) writeChunk();
+            raw[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == CHUNK_SIZE) writeChunk();
+                int n = Math.min(len, CHUNK_SIZE - length);
+                System.arraycopy(b, off, raw, length, n);
+                length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        // Leaves the chunk open: cutting one on every flush would only cost compression
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        void finish() throws IOException {
+            writeChunk();
+            out.writeInt(0);
+            out.flush();
+        }
+
+        private void writeChunk() throws IOException {
+            if (length == 0) return;
+            // only worth keeping when strictly smaller, which also keeps the two cases apart
+            int n = codec.compress(raw, length, packed);
+            out.writeInt(length);
+            if (n >= 0 && n < length) {
+                out.writeInt(n);
+                out.write(packed, 0, n);
+            } else {
+                out.writeInt(length);
+                out.write(raw, 0, length);
+            }
+            length = 0;
+        }
+    }
+
+    /** Reads the plain snapshot stream back out of a compressed one. */
+    static final class Reader extends InputStream {
+        private final DataInputStream in;
+        private final SnapshotCodec codec;
+        private final byte[] raw = new byte[CHUNK_SIZE];
+        private final byte[] packed = new byte[CHUNK_SIZE];
+        private int position, length;
+        private boolean done;
+
+        Reader(InputStream in, SnapshotCodec codec) throws IOException {
+            this.in = new DataInputStream(in);
+            this.codec = codec;
+            if (this.in.readInt() != MAGIC) throw new IOException("Not a compressed directory snapshot");
+            this.in.readByte();
+            if ((this.in.readByte() & 0xFF) != codec.id()) throw new IOException("Snapshot was compressed with another codec");
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == length && !nextChunk()) return -1;
+            return raw[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (position == length && !nextChunk()) return -1;
+            int n = Math.min(len, length - position);
+            System.arraycopy(raw, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (done) return false;
+            int rawLength = in.readInt();
+            if (rawLength == 0) {
+                done = true;
+                return false;
+            }
+            int stored = in.readInt();
+            if (rawLength < 0 || rawLength > CHUNK_SIZE || stored < 0 || stored > rawLength) {
+                throw new IOException("Corrupt compressed snapshot chunk");
+            }
+            if (stored == rawLength) {
+                in.readFully(raw, 0, rawLength);
+            } else {
+                in.readFully(packed, 0, stored);
+                codec.decompress(packed, stored, raw, rawLength);
+            }
+            position = 0;
+            length = rawLength;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.phonedir;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@link PhoneDirectory} that can be shared between threads, such as import workers, the
+ * Swing event thread and a background saver. Lookups, searches and listings never lock,
+ * except fuzzy searches, which share a read-write lock with the writers of their index.
+ * Adds and removes lock one of a set of name stripes, so duplicate detection stays atomic
+ * while writers to different names rarely contend; they then take turns updating the
+ * search and phone indexes, which is brief next to the rest of the change. Listings and searches
+ * are weakly consistent: they reflect changes made concurrently with the call or not, but
+ * never fail.
+ */
+public class ConcurrentPhoneDirectory extends PhoneDirectory {
+    private static final long serialVersionUID = 1L;
+
+    public ConcurrentPhoneDirectory() {
+        super(true);
+    }
+
+    /** Same as {@link PhoneDirectory#loadFromFile(File)}, loading into a concurrent directory. */
+    public static ConcurrentPhoneDirectory loadFromFile(File file) throws IOException, ClassNotFoundException {
+        return (ConcurrentPhoneDirectory) load(file, new ConcurrentPhoneDirectory());
+    }
+}
@@ -1,13 +1,26 @@
 package com.example.phonedir;
 
-public class Contact extends Person implements Searchable {
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+public class Contact extends Person implements Searchable, Scorable {
     private static final long serialVersionUID = 1L;
 
     private final String phoneNumber;
     private final String email;
 
-    private boolean favorite;
-    private boolean blocked;
+    // Volatile so flag changes made on one thread are seen by readers of a shared directory
+    private volatile boolean favorite;
+    private volatile boolean blocked;
+
+    // Lowercased copies of the searchable fields, computed once so matching allocates nothing
+    private transient String nameKey;
+    private transient String phoneKey;
+    private transient String emailKey;
+
+    private transient volatile PhoneDirectory owner;
+    // The owner's number for this contact in its indexes, see ContactIds
+    private transient int id;
 
     public Contact(String name, String phoneNumber, String email) {
         super(name);
@@ -15,27 +28,99 @@ public class Contact extends Person implements Searchable {
         this.email = email;
         this.favorite = false;
         this.blocked = false;
+        initSearchKeys();
+    }
+
+    // For a subclass that keeps its fields elsewhere and overrides the getters, the search
+    // keys and the flags to read them; see ColumnarDirectory
+    Contact() {
+        this.phoneNumber = null;
+        this.email = null;
+    }
+
+    private void initSearchKeys() {
+        nameKey = getName().toLowerCase();
+        phoneKey = phoneNumber == null ? null : phoneNumber.toLowerCase();
+        emailKey = email == null ? null : email.toLowerCase();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initSearchKeys();
     }
 
     public String getPhoneNumber() { return phoneNumber; }
     public String getEmail() { return email; }
 
     public boolean isFavorite() { return favorite; }
-    public void setFavorite(boolean favorite) { this.favorite = favorite; }
     public boolean isBlocked() { return blocked; }
-    public void setBlocked(boolean blocked) { this.blocked = blocked; }
+
+    // Synchronized so the owner's counters see each flip exactly once
+    public synchronized void setFavorite(boolean favorite) {
+        if (this.favorite == favorite) return;
+        this.favorite = favorite;
+        if (owner != null) owner.flagsChanged(this, favorite ? 1 : -1, 0);
+    }
+
+    public synchronized void setBlocked(boolean blocked) {
+        if (this.blocked == blocked) return;
+        this.blocked = blocked;
+        if (owner != null) owner.flagsChanged(this, 0, blocked ? 1 : -1);
+    }
+
+    // Set while the contact belongs to a directory, so flag changes reach its journal
+    void setOwner(PhoneDirectory owner) { this.owner = owner; }
+    PhoneDirectory getOwner() { return owner; }
+
+    void setId(int id) { this.id = id; }
+    int getId() { return id; }
 
     @Override
     public boolean matches(String query) {
         if (query == null) return false;
-        String q = query.toLowerCase();
-        return getName().toLowerCase().contains(q)
-                || (phoneNumber != null && phoneNumber.toLowerCase().contains(q))
-                || (email != null && email.toLowerCase().contains(q));
+        return matchesLowered(query.toLowerCase());
+    }
+
+    // Same as matches() for a query the caller has already lowercased
+    boolean matchesLowered(String lowerQuery) {
+        String phone = phoneKey();
+        String mail = emailKey();
+        return nameKey().contains(lowerQuery)
+                || (phone != null && phone.contains(lowerQuery))
+                || (mail != null && mail.contains(lowerQuery));
     }
 
+    /**
+     * Scores the words of the name against the words of {@code query}: every query word
+     * must be within a few edits of some name word, and the score is the sum of those
+     * edits. This is the ranking {@link PhoneDirectory#fuzzySearch(String, int)} uses.
+     */
+    @Override
+    public int score(String query) {
+        if (query == null) return NO_MATCH;
+        String[] words = FuzzyIndex.tokens(query);
+        if (words.length == 0) return NO_MATCH;
+        String[] own = FuzzyIndex.tokens(getName());
+        int total = 0;
+        for (String w : words) {
+            int closest = NO_MATCH;
+            int max = FuzzyIndex.maxDistance(w);
+            for (String o : own) {
+                int d = FuzzyIndex.distance(w, o);
+                if (d <= max && (closest == NO_MATCH || d < closest)) closest = d;
+            }
+            if (closest == NO_MATCH) return NO_MATCH;
+            total += closest;
+        }
+        return total;
+    }
+
+    String nameKey() { return nameKey; }
+    String phoneKey() { return phoneKey; }
+    String emailKey() { return emailKey; }
+
     @Override
     public String toString() {
-        return "Contact{name='" + getName() + "', phone='" + phoneNumber + "', email='" + email + "', favorite=" + favorite + ", blocked=" + blocked + "}";
+        return "Contact{name='" + getName() + "', phone='" + getPhoneNumber() + "', email='" + getEmail() + "', favorite=" + isFavorite() + ", blocked=" + isBlocked() + "}";
     }
 }
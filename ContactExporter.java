@@ -0,0 +1,168 @@
+package com.example.phonedir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+
+/**
+ * Streams contacts to a CSV or multi-contact vCard file. Contacts are written one at a
+ * time through a buffered writer, so the output is never held in memory, and they go to
+ * a temporary file that replaces the target only once the export is complete. The CSV
+ * output has a header row and reads back with {@link ContactImporter}.
+ */
+public final class ContactExporter {
+    // How many contacts are written between progress reports and cancellation checks
+    private static final int CHUNK = 10_000;
+    private static final int BUFFER_CHARS = 1 << 16;
+
+    private final ContactImporter.Format format;
+
+    public ContactExporter(ContactImporter.Format format) {
+        if (format == null) throw new IllegalArgumentException("format must not be null");
+        this.format = format;
+    }
+
+    /**
+     * Writes {@code contacts} to {@code file} and returns how many were written. The
+     * listener, when given, is told every few thousand contacts how many were written and
+     * what share of the collection that is. An interrupted export stops with an
+     * {@link InterruptedIOException} and leaves {@code file} as it was.
+     */
+    public int exportFile(Collection<Contact> contacts, File file, PhoneDirectory.LoadListener listener) throws IOException {
+        if (contacts == null) throw new IllegalArgumentException("contacts must not be null");
+        if (file == null) throw new IllegalArgumentException("file must not be null");
+        File parent = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile("." + file.getName() + "-", ".tmp", parent);
+        try {
+            int written;
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8), BUFFER_CHARS)) {
+                written = write(contacts, out, listener);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return written;
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /** Writes {@code contacts} to {@code out} without closing it. */
+    public int write(Collection<Contact> contacts, Writer out, PhoneDirectory.LoadListener listener) throws IOException {
+        // a live view may change size while it is written; it only scales the progress
+        int total = Math.max(1, contacts.size());
+        if (format == ContactImporter.Format.CSV) out.write("name,phone,email\r\n");
+        int written = 0;
+        for (Contact c : contacts) {
+            if (format == ContactImporter.Format.VCARD) {
+                writeVCard(c, out);
+            } else {
+                writeCsv(c, out);
+            }
+            if (++written % CHUNK == 0) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Export cancelled");
+                if (listener != null) listener.loaded(written, (int) Math.min(100, written * 100L / total));
+            }
+        }
+        if (listener != null) listener.loaded(written, 100);
+        return written;
+    }
+
+    /** Returns the vCard of a single contact, e.g. for the clipboard. */
+    static String toVCard(Contact c) {
+        StringWriter out = new StringWriter();
+        try {
+            writeVCard(c, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private static void writeVCard(Contact c, Writer out) throws IOException {
+        out.write("BEGIN:VCARD\r\nVERSION:3.0\r\nFN:");
+        writeVCardText(c.getName(), out);
+        // N is required in vCard 3.0; the last word of the name is taken as the family name
+        out.write("\r\nN:");
+        String name = c.getName().trim();
+        int space = name.lastIndexOf(' ');
+        writeVCardText(name.substring(space + 1), out);
+        out.write(';');
+        if (space > 0) writeVCardText(name.substring(0, space), out);
+        out.write(";;;\r\n");
+        if (c.getPhoneNumber() != null) {
+            out.write("TEL:");
+            writeVCardText(c.getPhoneNumber(), out);
+            out.write("\r\n");
+        }
+        if (c.getEmail() != null) {
+            out.write("EMAIL:");
+            writeVCardText(c.getEmail(), out);
+            out.write("\r\n");
+        }
+        out.write("END:VCARD\r\n");
+    }
+
+    private static void writeVCardText(String s, Writer out) throws IOException {
+        if (!needsEscapes(s)) {
+            out.write(s);
+            return;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+                case '\\': case ',': case ';':
+                    out.write('\\');
+                    out.write(ch);
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    break;
+                default:
+                    out.write(ch);
+            }
+        }
+    }
+
+    private static boolean needsEscapes(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '\\' || ch == ',' || ch == ';' || ch == '\n' || ch == '\r') return true;
+        }
+        return false;
+    }
+
+    private static void writeCsv(Contact c, Writer out) throws IOException {
+        writeCsvField(c.getName(), out);
+        out.write(',');
+        writeCsvField(c.getPhoneNumber(), out);
+        out.write(',');
+        writeCsvField(c.getEmail(), out);
+        out.write("\r\n");
+    }
+
+    private static void writeCsvField(String s, Writer out) throws IOException {
+        if (s == null) return;
+        if (!needsQuotes(s)) {
+            out.write(s);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '"') out.write('"');
+            out.write(ch);
+        }
+        out.write('"');
+    }
+
+    private static boolean needsQuotes(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == ',' || ch == '"' || ch == '\n' || ch == '\r') return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.phonedir;
+
+import java.util.Arrays;
+
+/**
+ * Numbers the contacts of a directory, so its indexes can hold them as ints. A contact
+ * keeps its id on itself while it belongs to the directory, like its owner. Removing one
+ * takes two steps: {@link #clear} hides it from lookups before the indexes drop it, and
+ * {@link #release} hands the id out again once they have. The trigram index drops ids
+ * lazily, so a lookup there may still meet a released id, now another contact's, which
+ * its callers already confirm. New ids are taken from the released ones first, so the
+ * table stays about as large as the directory. Lookups do not lock; an index that
+ * safely publishes an id makes the slot filled before it visible to its readers.
+ */
+final class ContactIds {
+    private volatile Contact[] slots = new Contact[16];
+    // Guarded by this
+    private int next;
+    private int[] released = new int[16];
+    private int releasedCount;
+
+    /** Gives {@code c} an id and makes it visible to {@link #get}. */
+    synchronized void add(Contact c) {
+        int id;
+        if (releasedCount > 0) {
+            id = released[--releasedCount];
+        } else {
+            id = next++;
+            if (id == slots.length) slots = Arrays.copyOf(slots, id + (id >> 1));
+        }
+        c.setId(id);
+        slots[id] = c;
+    }
+
+    /** Hides {@code c} from {@link #get}; its id stays taken until {@link #release}. */
+    synchronized void clear(Contact c) {
+        int id = c.getId();
+        if (id < next && slots[id] == c) slots[id] = null;
+    }
+
+    /** Lets a cleared contact's id be handed out again; every index must have dropped it. */
+    synchronized void release(Contact c) {
+        int id = c.getId();
+        if (id >= next || slots[id] != null) return;
+        if (releasedCount == released.length) released = Arrays.copyOf(released, releasedCount * 2);
+        released[releasedCount++] = id;
+    }
+
+    /**
+     * Numbers an empty table's worth of contacts 0 to n - 1 in the order given, which is
+     * how a directory fills its indexes in one pass when it is loaded.
+     */
+    synchronized void addAll(Contact[] contacts) {
+        if (next > 0) throw new IllegalStateException("Ids have already been handed out");
+        Contact[] s = Arrays.copyOf(contacts, Math.max(16, contacts.length));
+        for (int i = 0; i < contacts.length; i++) contacts[i].setId(i);
+        next = contacts.length;
+        slots = s;
+    }
+
+    /** The contact with this id, or null once it was removed. */
+    Contact get(int id) {
+        Contact[] s = slots;
+        return id < s.length ? s[id] : null;
+    }
+
+    /** One past the largest id handed out so far. */
+    synchronized int limit() {
+        return next;
+    }
+}
@@ -0,0 +1,538 @@
+package com.example.phonedir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Streams contacts from a CSV or vCard file into a {@link PhoneDirectory}. The calling
+ * thread reads the file into batches of raw records, worker threads parse and normalize
+ * the batches, and the calling thread adds each parsed batch to the directory in file
+ * order. Only a few batches are in flight at a time, so memory use does not depend on the
+ * size of the file.
+ *
+ * CSV files may start with a header row naming the name, phone and email columns;
+ * without one the columns are taken in that order. Rows without a name are counted as
+ * invalid and skipped, and so are records too long to be a contact; of a vCard only the
+ * properties that make up a contact are kept, so large photos cost nothing.
+ */
+public final class ContactImporter {
+    public enum Format {
+        CSV, VCARD;
+
+        /** Guesses the format from the file name: {@code .vcf} and {@code .vcard} are vCard. */
+        public static Format of(File file) {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            return name.endsWith(".vcf") || name.endsWith(".vcard") ? VCARD : CSV;
+        }
+    }
+
+    /** What to do with a contact whose name is already in the directory. */
+    public enum DuplicatePolicy {
+        /** Keep the existing contact. */
+        SKIP,
+        /** Replace the existing contact, keeping its favorite and blocked flags. */
+        OVERWRITE,
+        /** Keep the existing contact and list the name in the result. */
+        REPORT
+    }
+
+    /** Counts for one import. */
+    public static final class Result {
+        private int rows;
+        private int added;
+        private int replaced;
+        private int duplicates;
+        private int invalid;
+        private final List<String> duplicateNames = new ArrayList<>();
+        private long elapsedNanos;
+
+        public int getRows() { return rows; }
+        public int getAdded() { return added; }
+        public int getReplaced() { return replaced; }
+        /** Rows whose name was already taken, whether or not they replaced the contact. */
+        public int getDuplicates() { return duplicates; }
+        public int getInvalid() { return invalid; }
+        /** The first hundred duplicate names, when duplicates are reported. */
+        public List<String> getDuplicateNames() { return Collections.unmodifiableList(duplicateNames); }
+        public long getElapsedNanos() { return elapsedNanos; }
+
+        public double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rows / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d rows in %.1f s (%,.0f rows/s): %,d added, %,d replaced, %,d duplicates, %,d invalid",
+                    rows, elapsedNanos / 1e9, rowsPerSecond(), added, replaced, duplicates, invalid);
+        }
+    }
+
+    private static final int MAX_REPORTED = 100;
+    private static final int BATCH_SIZE = 1000;
+    // A longer record is skipped as invalid rather than buffered, so a quote or vCard that
+    // never ends cannot pull the rest of the file into memory
+    private static final int MAX_RECORD_CHARS = 1 << 16;
+
+    private final DuplicatePolicy duplicatePolicy;
+    private final int threads;
+
+    public ContactImporter(DuplicatePolicy duplicatePolicy) {
+        this(duplicatePolicy, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ContactImporter(DuplicatePolicy duplicatePolicy, int threads) {
+        if (duplicatePolicy == null) throw new IllegalArgumentException("duplicatePolicy must not be null");
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+        this.duplicatePolicy = duplicatePolicy;
+        this.threads = threads;
+    }
+
+    /**
+     * Imports {@code file} into {@code into}, in the format its name suggests. The listener,
+     * when given, is told after every batch how many rows were read and how far into the
+     * file the import is. An interrupted import stops after the current batch with an
+     * {@link InterruptedIOException}; the contacts added so far stay in the directory.
+     */
+    public Result importFile(File file, PhoneDirectory into, PhoneDirectory.LoadListener listener) throws IOException {
+        if (file == null) throw new IllegalArgumentException("file must not be null");
+        if (into == null) throw new IllegalArgumentException("directory must not be null");
+        try (FileInputStream fis = new FileInputStream(file)) {
+            long length = Math.max(1, file.length());
+            BufferedReader reader = new BufferedReader(new InputStreamReader(fis, StandardCharsets.UTF_8), 1 << 16);
+            return run(reader, Format.of(file), into, listener == null ? null : rows -> {
+                int percent = (int) Math.min(100, fis.getChannel().position() * 100 / length);
+                listener.loaded(rows, percent);
+            });
+        }
+    }
+
+    /** Imports records read from {@code in}; progress is reported as 0% until the end. */
+    public Result importFrom(Reader in, Format format, PhoneDirectory into, PhoneDirectory.LoadListener listener) throws IOException {
+        if (in == null) throw new IllegalArgumentException("reader must not be null");
+        if (into == null) throw new IllegalArgumentException("directory must not be null");
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+        return run(reader, format, into, listener == null ? null : rows -> listener.loaded(rows, 0));
+    }
+
+    private interface Progress { void batchDone(int rows) throws IOException; }
+
+    private Result run(BufferedReader reader, Format format, PhoneDirectory into, Progress progress) throws IOException {
+        Result result = new Result();
+        long start = System.nanoTime();
+        RecordSource source = format == Format.VCARD ? new VCardSource(reader) : new CsvSource(reader);
+        ExecutorService workers = threads > 1 ? Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "contact-import");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+        // parsed batches in file order; bounded so the reader cannot run ahead of the inserts
+        Deque<Future<Batch>> inFlight = new ArrayDeque<>();
+        try {
+            List<String> records;
+            while ((records = source.nextBatch()) != null) {
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Import cancelled");
+                result.rows += records.size();
+                Callable<Batch> parse = source.parser(records);
+                if (workers == null) {
+                    insert(call(parse), into, result);
+                    if (progress != null) progress.batchDone(result.rows);
+                    continue;
+                }
+                inFlight.add(workers.submit(parse));
+                if (inFlight.size() >= threads * 2) {
+                    insert(await(inFlight.poll()), into, result);
+                    if (progress != null) progress.batchDone(result.rows);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                insert(await(inFlight.poll()), into, result);
+            }
+            if (progress != null) progress.batchDone(result.rows);
+        } finally {
+            if (workers != null) workers.shutdownNow();
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private static Batch call(Callable<Batch> parse) throws IOException {
+        try {
+            return parse.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static Batch await(Future<Batch> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import cancelled");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to parse records", e.getCause());
+        }
+    }
+
+    private void insert(Batch batch, PhoneDirectory into, Result result) {
+        result.invalid += batch.invalid;
+        for (Contact c : batch.contacts) {
+            try {
+                into.addContact(c);
+                result.added++;
+                continue;
+            } catch (DuplicateContactException e) {
+                result.duplicates++;
+            }
+            if (duplicatePolicy == DuplicatePolicy.REPORT) {
+                if (result.duplicateNames.size() < MAX_REPORTED) result.duplicateNames.add(c.getName());
+            } else if (duplicatePolicy == DuplicatePolicy.OVERWRITE) {
+                Contact old = into.getByName(c.getName());
+                if (old != null) {
+                    c.setFavorite(old.isFavorite());
+                    c.setBlocked(old.isBlocked());
+                }
+                into.removeByName(c.getName());
+                try {
+                    into.addContact(c);
+                    result.replaced++;
+                } catch (DuplicateContactException e) {
+                    // another thread added the name again in between; theirs wins
+                }
+            }
+        }
+    }
+
+    private static final class Batch {
+        final List<Contact> contacts;
+        final int invalid;
+
+        Batch(List<Contact> contacts, int invalid) {
+            this.contacts = contacts;
+            this.invalid = invalid;
+        }
+    }
+
+    // Splits a file into raw records and knows how to parse them
+    private abstract static class RecordSource {
+        final BufferedReader reader;
+
+        RecordSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        /** The next records, or null at the end of the file. */
+        List<String> nextBatch() throws IOException {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            String record;
+            while (batch.size() < BATCH_SIZE && (record = nextRecord()) != null) {
+                batch.add(record);
+            }
+            return batch.isEmpty() ? null : batch;
+        }
+
+        abstract String nextRecord() throws IOException;
+
+        abstract Callable<Batch> parser(List<String> records);
+    }
+
+    private static final class CsvSource extends RecordSource {
+        // Column of each field, -1 when absent; firstColumn/lastColumn are used when there is no name column
+        private int nameColumn = 0, phoneColumn = 1, emailColumn = 2, firstColumn = -1, lastColumn = -1;
+        private boolean headerChecked;
+
+        CsvSource(BufferedReader reader) {
+            super(reader);
+        }
+
+        @Override
+        String nextRecord() throws IOException {
+            String record = readRecord();
+            if (!headerChecked) {
+                headerChecked = true;
+                if (record != null && record.startsWith("\uFEFF")) record = record.substring(1);
+                if (record != null && readHeader(splitCsv(record))) record = readRecord();
+            }
+            return record;
+        }
+
+        // A record ends at a line break outside quotes; blank lines are skipped. One that
+        // grows past MAX_RECORD_CHARS is read to its end without being kept and comes back
+        // empty, which the parser counts as invalid.
+        private String readRecord() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null) return null;
+            } while (line.isBlank());
+            if (!openQuote(line, false)) return line;
+            StringBuilder sb = new StringBuilder(line);
+            boolean open = true;
+            while (open) {
+                String next = reader.readLine();
+                if (next == null) {
+                    // a short record is parsed as it is, but a dropped one took the rest of the file
+                    if (sb == null) throw new IOException("Unterminated quoted field in CSV file");
+                    break;
+                }
+                open = openQuote(next, true);
+                if (sb == null) continue;
+                sb.append('\n').append(next);
+                if (sb.length() > MAX_RECORD_CHARS) sb = null;
+            }
+            return sb == null ? "" : sb.toString();
+        }
+
+        private static boolean openQuote(String line, boolean open) {
+            for (int i = 0; i < line.length(); i++) {
+                if (line.charAt(i) == '"') open = !open;
+            }
+            return open;
+        }
+
+        // A row naming any column we know is a header, and then it must say where the name is
+        private boolean readHeader(List<String> fields) throws IOException {
+            int name = -1, phone = -1, email = -1, first = -1, last = -1;
+            for (int i = 0; i < fields.size(); i++) {
+                switch (fields.get(i).trim().toLowerCase(Locale.ROOT)) {
+                    case "name": case "full name": case "display name":
+                        if (name < 0) name = i;
+                        break;
+                    case "phone": case "phone number": case "telephone": case "mobile": case "mobile phone": case "tel":
+                        if (phone < 0) phone = i;
+                        break;
+                    case "email": case "e-mail": case "email address": case "e-mail address":
+                        if (email < 0) email = i;
+                        break;
+                    case "first name": case "given name":
+                        if (first < 0) first = i;
+                        break;
+                    case "last name": case "family name": case "surname":
+                        if (last < 0) last = i;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (name < 0 && first < 0 && last < 0) {
+                if (phone < 0 && email < 0) return false;
+                throw new IOException("CSV header has no name column; expected Name, or First Name and Last Name");
+            }
+            nameColumn = name;
+            phoneColumn = phone;
+            emailColumn = email;
+            firstColumn = first;
+            lastColumn = last;
+            return true;
+        }
+
+        @Override
+        Callable<Batch> parser(List<String> records) {
+            int nameCol = nameColumn, phoneCol = phoneColumn, emailCol = emailColumn, firstCol = firstColumn, lastCol = lastColumn;
+            return () -> {
+                List<Contact> contacts = new ArrayList<>(records.size());
+                int invalid = 0;
+                for (String record : records) {
+                    List<String> fields = splitCsv(record);
+                    String name = nameCol >= 0 ? field(fields, nameCol)
+                            : join(field(fields, firstCol), field(fields, lastCol));
+                    if (name == null) {
+                        invalid++;
+                        continue;
+                    }
+                    contacts.add(new Contact(name, field(fields, phoneCol), field(fields, emailCol)));
+                }
+                return new Batch(contacts, invalid);
+            };
+        }
+
+        static List<String> splitCsv(String record) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder sb = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < record.length(); i++) {
+                char ch = record.charAt(i);
+                if (quoted) {
+                    if (ch != '"') {
+                        sb.append(ch);
+                    } else if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                        sb.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (ch == '"') {
+                    quoted = true;
+                } else if (ch == ',') {
+                    fields.add(sb.toString());
+                    sb.setLength(0);
+                } else {
+                    sb.append(ch);
+                }
+            }
+            fields.add(sb.toString());
+            return fields;
+        }
+    }
+
+    private static final class VCardSource extends RecordSource {
+        // The properties parseVCard reads; the rest are not worth buffering
+        private static final Set<String> PARSED = Set.of("FN", "N", "TEL", "EMAIL");
+
+        // Set when a card ran into the next one's BEGIN:VCARD, which starts the next record
+        private boolean begun;
+
+        VCardSource(BufferedReader reader) {
+            super(reader);
+        }
+
+        // A record is the lines between BEGIN:VCARD and END:VCARD, still folded, of the
+        // properties that are parsed. A card that runs into the next one, or whose parsed
+        // properties alone grow past MAX_RECORD_CHARS, comes back empty, which the parser
+        // counts as invalid.
+        @Override
+        String nextRecord() throws IOException {
+            String line;
+            if (!begun) {
+                do {
+                    line = reader.readLine();
+                    if (line == null) return null;
+                } while (!line.trim().equalsIgnoreCase("BEGIN:VCARD"));
+            }
+            begun = false;
+            StringBuilder sb = new StringBuilder();
+            boolean keep = false;
+            while ((line = reader.readLine()) != null && !line.trim().equalsIgnoreCase("END:VCARD")) {
+                if (line.trim().equalsIgnoreCase("BEGIN:VCARD")) {
+                    begun = true;
+                    return "";
+                }
+                // a folded line belongs to the property above it
+                if (!folded(line)) {
+                    int colon = line.indexOf(':');
+                    keep = colon >= 0 && PARSED.contains(propertyOf(line, colon));
+                }
+                if (!keep || sb == null) continue;
+                sb.append(line).append('\n');
+                if (sb.length() > MAX_RECORD_CHARS) sb = null;
+            }
+            return sb == null ? "" : sb.toString();
+        }
+
+        @Override
+        Callable<Batch> parser(List<String> records) {
+            return () -> {
+                List<Contact> contacts = new ArrayList<>(records.size());
+                int invalid = 0;
+                for (String record : records) {
+                    Contact c = parseVCard(record);
+                    if (c == null) {
+                        invalid++;
+                    } else {
+                        contacts.add(c);
+                    }
+                }
+                return new Batch(contacts, invalid);
+            };
+        }
+
+        static Contact parseVCard(String record) {
+            String formatted = null, structured = null, phone = null, email = null;
+            for (String line : unfold(record)) {
+                int colon = line.indexOf(':');
+                if (colon < 0) continue;
+                String value = line.substring(colon + 1);
+                switch (propertyOf(line, colon)) {
+                    case "FN":
+                        if (formatted == null) formatted = trimToNull(unescape(value));
+                        break;
+                    case "N":
+                        if (structured == null) structured = structuredName(value);
+                        break;
+                    case "TEL":
+                        if (phone == null) {
+                            if (value.regionMatches(true, 0, "tel:", 0, 4)) value = value.substring(4);
+                            phone = trimToNull(unescape(value));
+                        }
+                        break;
+                    case "EMAIL":
+                        if (email == null) email = trimToNull(unescape(value));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            String name = formatted != null ? formatted : structured;
+            return name == null ? null : new Contact(name, phone, email);
+        }
+
+        // The property name of a content line, without parameters or a group prefix such as "item1."
+        private static String propertyOf(String line, int colon) {
+            String property = line.substring(0, colon);
+            int semicolon = property.indexOf(';');
+            if (semicolon >= 0) property = property.substring(0, semicolon);
+            return property.substring(property.lastIndexOf('.') + 1).toUpperCase(Locale.ROOT);
+        }
+
+        // Lines starting with a space or tab continue the previous line
+        private static boolean folded(String line) {
+            return !line.isEmpty() && (line.charAt(0) == ' ' || line.charAt(0) == '\t');
+        }
+
+        private static List<String> unfold(String record) {
+            List<String> lines = new ArrayList<>();
+            for (String line : record.split("\n")) {
+                if (!lines.isEmpty() && folded(line)) {
+                    int last = lines.size() - 1;
+                    lines.set(last, lines.get(last) + line.substring(1));
+                } else {
+                    lines.add(line);
+                }
+            }
+            return lines;
+        }
+
+        // N is Family;Given;Additional;Prefix;Suffix
+        private static String structuredName(String value) {
+            String[] parts = value.split("(?<!\\\\);", -1);
+            String family = parts.length > 0 ? trimToNull(unescape(parts[0])) : null;
+            String given = parts.length > 1 ? trimToNull(unescape(parts[1])) : null;
+            return join(given, family);
+        }
+
+        private static String unescape(String value) {
+            if (value.indexOf('\\') < 0) return value;
+            StringBuilder sb = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char ch = value.charAt(i);
+                if (ch == '\\' && i + 1 < value.length()) {
+                    char next = value.charAt(++i);
+                    sb.append(next == 'n' || next == 'N' ? '\n' : next);
+                } else {
+                    sb.append(ch);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    private static String field(List<String> fields, int column) {
+        return column >= 0 && column < fields.size() ? trimToNull(fields.get(column)) : null;
+    }
+
+    private static String join(String first, String last) {
+        if (first == null) return last;
+        if (last == null) return first;
+        return first + " " + last;
+    }
+
+    private static String trimToNull(String s) {
+        if (s == null) return null;
+        s = s.trim();
+        return s.isEmpty() ? null : s;
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.phonedir;
+
+import javax.swing.AbstractListModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * List model that wraps a result list instead of copying it element by element. Replacing
+ * the contents with {@link #setContacts(List)} fires a single change event, however many
+ * rows change, and a {@code JList} with a fixed cell height then only asks the model for
+ * the rows it paints. The wrapped list must not be modified afterwards.
+ *
+ * The list is kept in name order, so single contacts can also be inserted, removed or
+ * repainted in place after a binary search; the first such patch works on a private copy.
+ * The model also counts its rows by leading letter, which locates the first row of any
+ * letter in O(1) for an alphabet bar. A ranked list, such as fuzzy search results best
+ * first, is shown as given and supports neither.
+ */
+class ContactListModel extends AbstractListModel<Contact> {
+    private static final long serialVersionUID = 1L;
+
+    // Leading-character groups in list order: names sorting before 'a', then A-Z, then after 'z'
+    private static final int BEFORE_LETTERS = 0, AFTER_LETTERS = 27;
+
+    private List<Contact> contacts = Collections.emptyList();
+    // Whether contacts is our own copy, which patches may modify
+    private boolean owned;
+    // Whether contacts is in some order other than by name
+    private boolean ranked;
+    private final int[] groupCounts = new int[AFTER_LETTERS + 1];
+
+    void setContacts(List<Contact> contacts) {
+        replace(contacts, false);
+    }
+
+    /** Shows contacts in the order given rather than by name, e.g. best match first. */
+    void setRankedContacts(List<Contact> contacts) {
+        replace(contacts, true);
+    }
+
+    /** Whether the list is ranked, so it can only be replaced, not patched or jumped through. */
+    boolean isRanked() {
+        return ranked;
+    }
+
+    private void replace(List<Contact> contacts, boolean ranked) {
+        int before = this.contacts.size();
+        this.contacts = contacts == null ? Collections.<Contact>emptyList() : contacts;
+        this.ranked = ranked;
+        owned = false;
+        Arrays.fill(groupCounts, 0);
+        for (Contact c : this.contacts) groupCounts[group(c.getName())]++;
+        int span = Math.max(before, this.contacts.size());
+        if (span > 0) fireContentsChanged(this, 0, span - 1);
+    }
+
+    @Override
+    public int getSize() {
+        return contacts.size();
+    }
+
+    @Override
+    public Contact getElementAt(int index) {
+        return contacts.get(index);
+    }
+
+    /** The contacts shown, as an unmodifiable list that later patches leave alone. */
+    List<Contact> getContacts() {
+        owned = false;
+        return Collections.unmodifiableList(contacts);
+    }
+
+    /**
+     * Patches the list for one directory change, given which contacts it should show.
+     * A contact's row moves only when it starts or stops being shown.
+     */
+    void apply(DirectoryEvent e, Predicate<Contact> shown) {
+        if (ranked) throw new IllegalStateException("a ranked list cannot be patched");
+        Contact c = e.getContact();
+        switch (e.getType()) {
+            case ADDED:
+                if (shown.test(c)) insert(c);
+                break;
+            case REMOVED:
+                remove(c);
+                break;
+            case UPDATED:
+                remove(e.getPrevious());
+                if (shown.test(c)) insert(c);
+                break;
+            case FLAG_CHANGED:
+                if (!shown.test(c)) remove(c);
+                else if (indexOf(c) >= 0) changed(c);
+                else insert(c);
+                break;
+        }
+    }
+
+    /** Row of the contact with this contact's name, or -1. */
+    int indexOf(Contact c) {
+        if (ranked) return contacts.indexOf(c);
+        int i = Collections.binarySearch(contacts, c, PhoneDirectory.BY_NAME);
+        return i < 0 ? -1 : i;
+    }
+
+    /** Adds the contact at its place in name order, unless its name is already listed. */
+    void insert(Contact c) {
+        if (ranked) throw new IllegalStateException("a ranked list cannot be patched");
+        int i = Collections.binarySearch(contacts, c, PhoneDirectory.BY_NAME);
+        if (i >= 0) return;
+        i = -i - 1;
+        own().add(i, c);
+        groupCounts[group(c.getName())]++;
+        fireIntervalAdded(this, i, i);
+    }
+
+    void remove(Contact c) {
+        int i = indexOf(c);
+        if (i < 0) return;
+        Contact removed = own().remove(i);
+        groupCounts[group(removed.getName())]--;
+        fireIntervalRemoved(this, i, i);
+    }
+
+    /** Repaints the contact's row after a change that keeps its place. */
+    void changed(Contact c) {
+        int i = indexOf(c);
+        if (i >= 0) fireContentsChanged(this, i, i);
+    }
+
+    /** Number of rows whose name starts with {@code letter} (A-Z, either case). */
+    int letterCount(char letter) {
+        return groupCounts[letterGroup(letter)];
+    }
+
+    /** Number of rows whose name does not start with a letter A-Z. */
+    int otherCount() {
+        return groupCounts[BEFORE_LETTERS] + groupCounts[AFTER_LETTERS];
+    }
+
+    /** First row whose name starts with {@code letter}, or -1 when there is none or the list is ranked. */
+    int firstIndexOf(char letter) {
+        int g = letterGroup(letter);
+        if (ranked || groupCounts[g] == 0) return -1;
+        int index = 0;
+        for (int i = BEFORE_LETTERS; i < g; i++) index += groupCounts[i];
+        return index;
+    }
+
+    /**
+     * First row whose name does not start with a letter, or -1 (always for a ranked list).
+     * Such names sort both before the letters (digits, most punctuation) and after them
+     * (accented letters).
+     */
+    int firstOtherIndex() {
+        if (ranked) return -1;
+        if (groupCounts[BEFORE_LETTERS] > 0) return 0;
+        if (groupCounts[AFTER_LETTERS] == 0) return -1;
+        return contacts.size() - groupCounts[AFTER_LETTERS];
+    }
+
+    private static int letterGroup(char letter) {
+        char f = Character.toLowerCase(letter);
+        if (f < 'a' || f > 'z') throw new IllegalArgumentException("not a letter A-Z: " + letter);
+        return 1 + f - 'a';
+    }
+
+    // Folds the first character the way String.CASE_INSENSITIVE_ORDER compares it, so each
+    // group is one contiguous run of the name-ordered list
+    private static int group(String name) {
+        char f = Character.toLowerCase(Character.toUpperCase(name.charAt(0)));
+        if (f >= 'a' && f <= 'z') return 1 + f - 'a';
+        return f < 'a' ? BEFORE_LETTERS : AFTER_LETTERS;
+    }
+
+    private List<Contact> own() {
+        if (!owned) {
+            contacts = new ArrayList<>(contacts);
+            owned = true;
+        }
+        return contacts;
+    }
+
+    int size() {
+        return contacts.size();
+    }
+
+    boolean isEmpty() {
+        return contacts.isEmpty();
+    }
+
+    Contact get(int index) {
+        return contacts.get(index);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.phonedir;
+
+import java.util.*;
+
+/**
+ * One change to a {@link PhoneDirectory}, as delivered to its
+ * {@link PhoneDirectory.DirectoryListener}s. The directory itself reports additions,
+ * removals and flag changes; {@link #coalesce(List)} folds a batch of them into the net
+ * change per contact, which is where updates come from.
+ */
+public final class DirectoryEvent {
+    public enum Type {
+        /** A contact was added. */
+        ADDED,
+        /** A contact was removed; {@link #getContact()} is the removed contact. */
+        REMOVED,
+        /** A contact was replaced by one with the same name; see {@link #getPrevious()}. */
+        UPDATED,
+        /** A contact's favorite or blocked flag changed. */
+        FLAG_CHANGED
+    }
+
+    private final Type type;
+    private final Contact contact;
+    private final Contact previous;
+
+    DirectoryEvent(Type type, Contact contact, Contact previous) {
+        this.type = type;
+        this.contact = contact;
+        this.previous = previous;
+    }
+
+    public Type getType() { return type; }
+    public Contact getContact() { return contact; }
+    /** The contact that was replaced, for an {@link Type#UPDATED} event; null otherwise. */
+    public Contact getPrevious() { return previous; }
+
+    /**
+     * Folds a batch of events into at most one per contact name, in the order each name
+     * first changed: a removal followed by an addition becomes an update, an addition
+     * followed by a removal cancels out, and flag changes are absorbed by an addition or
+     * update of the same contact.
+     */
+    public static List<DirectoryEvent> coalesce(List<DirectoryEvent> events) {
+        if (events.size() < 2) return events;
+        Map<String, DirectoryEvent> net = new LinkedHashMap<>();
+        for (DirectoryEvent e : events) {
+            String key = PhoneDirectory.normalizeKey(e.contact.getName());
+            DirectoryEvent before = net.get(key);
+            DirectoryEvent merged = before == null ? e : merge(before, e);
+            if (merged == null) {
+                net.remove(key);
+            } else {
+                net.put(key, merged);
+            }
+        }
+        return new ArrayList<>(net.values());
+    }
+
+    // The net effect of before then after on one name, or null when there is none
+    private static DirectoryEvent merge(DirectoryEvent before, DirectoryEvent after) {
+        switch (after.type) {
+            case ADDED:
+                // only a removal can come before an addition
+                return new DirectoryEvent(Type.UPDATED, after.contact, before.contact);
+            case REMOVED:
+                if (before.type == Type.ADDED) return null;
+                if (before.type == Type.UPDATED) return new DirectoryEvent(Type.REMOVED, before.previous, null);
+                return after;
+            default:
+                // a flag change adds nothing to an earlier event for the same contact
+                return before;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + contact.getName();
+    }
+}
@@ -0,0 +1,308 @@
+package com.example.phonedir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only change log kept next to a directory snapshot ({@code <snapshot>.log}).
+ * Changes are buffered in memory and appended on {@link #flush()}, so a save costs
+ * O(changes) instead of a full rewrite. Every record carries a CRC, and replay stops at
+ * the first torn or corrupt record, so a crash mid-append only loses the unsaved tail.
+ * The log header names the snapshot epoch it applies to; a log left over from an older
+ * snapshot is ignored on load and never overwritten when opening, only set aside.
+ * Strings are written as in {@link DirectorySnapshot}, a varint length and UTF-8 bytes,
+ * so any field a contact can hold can be recorded. Logs from before that are still
+ * replayed, but never appended to. Recording and flushing may happen on different threads.
+ */
+class DirectoryJournal {
+    private static final int MAGIC = 0x50444A32; // "PDJ2"
+    // Strings as DataOutput.writeUTF, which cannot hold more than 64 KB
+    private static final int MAGIC_V1 = 0x50444A4C; // "PDJL"
+    private static final int HEADER_BYTES = 12;
+    // Below this size the log is never compacted; above it, once it outgrows the snapshot
+    private static final long COMPACT_MIN_BYTES = 1L << 20;
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_FLAGS = 3;
+
+    private final File snapshotFile;
+    private final File logFile;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long logBytes;
+
+    private DirectoryJournal(File snapshotFile) {
+        this.snapshotFile = snapshotFile.getAbsoluteFile();
+        this.logFile = logFileFor(this.snapshotFile);
+    }
+
+    /**
+     * Opens the log for appending, starting one if there is none. A log written against
+     * another snapshot holds changes that were never replayed, so it is not touched: this
+     * throws, and the caller can {@link #setAside} the log and write a new snapshot.
+     */
+    static DirectoryJournal open(File snapshotFile, long epoch) throws IOException {
+        DirectoryJournal journal = new DirectoryJournal(snapshotFile);
+        if (readEpoch(journal.logFile) == epoch) {
+            journal.logBytes = journal.logFile.length();
+        } else if (!journal.logFile.exists()) {
+            journal.restart(epoch);
+        } else {
+            throw new IOException("Journal " + journal.logFile + " was not written for this snapshot");
+        }
+        return journal;
+    }
+
+    /** Starts an empty log for a snapshot just written, replacing the log of the one it superseded. */
+    static DirectoryJournal start(File snapshotFile, long epoch) throws IOException {
+        DirectoryJournal journal = new DirectoryJournal(snapshotFile);
+        journal.restart(epoch);
+        return journal;
+    }
+
+    /**
+     * Whether {@link #open} would reuse or start the log, rather than refuse it. A log in
+     * the older format is refused too, even on its own snapshot: its changes are replayed
+     * on load but must go into a new snapshot before any more are appended.
+     */
+    static boolean canOpen(File snapshotFile, long epoch) {
+        File log = logFileFor(snapshotFile);
+        return !log.exists() || readEpoch(log) == epoch;
+    }
+
+    /** Renames the log next to {@code snapshotFile} to {@code <log>.<millis>.orphan}, if there is one. */
+    static void setAside(File snapshotFile) throws IOException {
+        File log = logFileFor(snapshotFile);
+        if (log.exists()) {
+            Files.move(log.toPath(), new File(log.getPath() + "." + System.currentTimeMillis() + ".orphan").toPath());
+        }
+    }
+
+    static File logFileFor(File snapshotFile) {
+        return new File(snapshotFile.getPath() + ".log");
+    }
+
+    boolean isFor(File file) {
+        return snapshotFile.equals(file.getAbsoluteFile());
+    }
+
+    File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    synchronized void recordAdd(Contact c) {
+        Record r = new Record(OP_ADD);
+        r.writeString(c.getName());
+        r.writeString(c.getPhoneNumber());
+        r.writeString(c.getEmail());
+        r.writeFlags(c);
+        r.appendTo(pending);
+    }
+
+    synchronized void recordRemove(String name) {
+        Record r = new Record(OP_REMOVE);
+        r.writeString(name);
+        r.appendTo(pending);
+    }
+
+    synchronized void recordFlags(Contact c) {
+        Record r = new Record(OP_FLAGS);
+        r.writeString(c.getName());
+        r.writeFlags(c);
+        r.appendTo(pending);
+    }
+
+    /** Appends the buffered records to the log and forces them to disk. */
+    synchronized void flush() throws IOException {
+        if (pending.size() == 0) return;
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            // a flush that failed partway may have left some of the still pending records
+            // behind; cut them off so they are not followed by a second copy past a torn one
+            if (raf.length() > logBytes) raf.setLength(logBytes);
+            raf.seek(logBytes);
+            raf.write(pending.toByteArray());
+            raf.getChannel().force(false);
+        }
+        logBytes += pending.size();
+        pending.reset();
+    }
+
+    synchronized boolean shouldCompact(long snapshotBytes) {
+        return logBytes > Math.max(COMPACT_MIN_BYTES, snapshotBytes);
+    }
+
+    /**
+     * Replaces the log with an empty one for a freshly written snapshot. Records still
+     * pending were made while the snapshot was being written and may or may not be in it,
+     * so they are kept for the next flush; replaying them is harmless either way.
+     */
+    synchronized void restart(long epoch) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(logFile);
+             DataOutputStream out = new DataOutputStream(fos)) {
+            out.writeInt(MAGIC);
+            out.writeLong(epoch);
+            out.flush();
+            fos.getChannel().force(false);
+        }
+        logBytes = HEADER_BYTES;
+    }
+
+    /** Receives the changes recorded in a log, in order. */
+    interface Target {
+        /** Adds the contact, replacing any contact with the same name. */
+        void put(Contact c) throws IOException;
+        void remove(String name);
+        void setFlags(String name, boolean favorite, boolean blocked);
+    }
+
+    /**
+     * Feeds the log next to {@code snapshotFile} to {@code target} if it was written against
+     * the given snapshot epoch. A torn tail is cut off so later appends stay reachable.
+     */
+    static void replay(File snapshotFile, long epoch, Target target) throws IOException {
+        File log = logFileFor(snapshotFile);
+        if (readEpoch(log, true) != epoch) return;
+        long valid = replayLog(log, target);
+        if (valid < log.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+                raf.setLength(valid);
+            }
+        }
+    }
+
+    /**
+     * Feeds the log next to {@code snapshotFile} to {@code target} if it was written against
+     * the given snapshot epoch. The log itself is left untouched, so this is safe while
+     * another process is appending to it.
+     */
+    static void read(File snapshotFile, long epoch, Target target) throws IOException {
+        File log = logFileFor(snapshotFile);
+        if (readEpoch(log, true) != epoch) return;
+        replayLog(log, target);
+    }
+
+    // Returns the length of the intact prefix of the log
+    private static long replayLog(File log, Target target) throws IOException {
+        long valid = HEADER_BYTES;
+        long length = log.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(log)))) {
+            boolean v1 = in.readInt() == MAGIC_V1;
+            in.skipBytes(HEADER_BYTES - 4);
+            byte[] payload;
+            while ((payload = readRecord(in, length - valid)) != null) {
+                apply(new DataInputStream(new ByteArrayInputStream(payload)), v1, target);
+                valid += 8 + payload.length;
+            }
+        }
+        return valid;
+    }
+
+    // Replay is idempotent: every op sets state rather than deriving it, so re-applying a
+    // log on top of a snapshot that already contains it yields the same directory.
+    private static void apply(DataInputStream in, boolean v1, Target target) throws IOException {
+        byte op = in.readByte();
+        String name = readString(in, v1);
+        if (op == OP_ADD) {
+            Contact c = new Contact(name, readString(in, v1), readString(in, v1));
+            byte flags = in.readByte();
+            c.setFavorite((flags & 1) != 0);
+            c.setBlocked((flags & 2) != 0);
+            target.put(c);
+        } else if (op == OP_REMOVE) {
+            target.remove(name);
+        } else if (op == OP_FLAGS) {
+            byte flags = in.readByte();
+            target.setFlags(name, (flags & 1) != 0, (flags & 2) != 0);
+        } else {
+            throw new IOException("Unknown journal record type: " + op);
+        }
+    }
+
+    // A length that runs past the end of the file is a torn or corrupt record, not an allocation
+    private static byte[] readRecord(DataInputStream in, long available) throws IOException {
+        try {
+            int len = in.readInt();
+            if (len <= 0 || len > available - 8) return null;
+            byte[] payload = new byte[len];
+            in.readFully(payload);
+            int crc = in.readInt();
+            return crc == crc(payload) ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    // The epoch of a log that can be replayed; only one in the current format can be appended to
+    private static long readEpoch(File log) {
+        return readEpoch(log, false);
+    }
+
+    private static long readEpoch(File log, boolean anyFormat) {
+        if (!log.isFile() || log.length() < HEADER_BYTES) return Long.MIN_VALUE;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(log))) {
+            int magic = in.readInt();
+            if (magic != MAGIC && (!anyFormat || magic != MAGIC_V1)) return Long.MIN_VALUE;
+            return in.readLong();
+        } catch (IOException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static String readString(DataInputStream in, boolean v1) throws IOException {
+        if (v1) return in.readBoolean() ? in.readUTF() : null;
+        return DirectorySnapshot.readNullable(in);
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    // One length-prefixed, checksummed log record. Building one cannot fail, which matters:
+    // it is recorded after the directory has changed, when there is no undoing the change.
+    private static final class Record {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+
+        Record(byte op) {
+            bytes.write(op);
+        }
+
+        // 0 for null, otherwise the UTF-8 length plus one, as DirectorySnapshot writes them
+        void writeString(String s) {
+            if (s == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length + 1);
+            bytes.write(utf8, 0, utf8.length);
+        }
+
+        private void writeVarint(int v) {
+            while ((v & ~0x7F) != 0) {
+                bytes.write((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            bytes.write(v);
+        }
+
+        void writeFlags(Contact c) {
+            bytes.write((c.isFavorite() ? 1 : 0) | (c.isBlocked() ? 2 : 0));
+        }
+
+        void appendTo(ByteArrayOutputStream target) {
+            byte[] payload = bytes.toByteArray();
+            DataOutputStream d = new DataOutputStream(target);
+            try {
+                d.writeInt(payload.length);
+                d.write(payload);
+                d.writeInt(crc(payload));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
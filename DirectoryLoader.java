@@ -0,0 +1,94 @@
+package com.example.phonedir;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+import java.awt.Component;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Loads a directory for a window that is already on screen. Contacts stream into the
+ * window's {@link ConcurrentPhoneDirectory} on a worker thread, and the view is told on
+ * the event thread as chunks arrive, so it can fill its list while the load runs. Once
+ * the load is over, journaling is switched on for the file. A load that fails, or whose
+ * journal cannot be switched on, switches nothing on: the file may still hold contacts
+ * this load could not read, so the view is told and nothing is saved over the file unless
+ * the user chooses to replace it.
+ */
+final class DirectoryLoader extends SwingWorker<Void, int[]> {
+    /** A window that shows a directory while it is being loaded. */
+    interface View {
+        void directoryLoading(int contacts, int percent);
+        void directoryLoaded();
+        /**
+         * The load failed, or its journal could not be opened; what was read so far is in
+         * the directory, and none of it is saved.
+         */
+        void directoryLoadFailed(File file, Exception e);
+    }
+
+    private final ConcurrentPhoneDirectory directory;
+    private final File file;
+    private final View view;
+
+    DirectoryLoader(ConcurrentPhoneDirectory directory, File file, View view) {
+        this.directory = directory;
+        this.file = file;
+        this.view = view;
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+        try {
+            directory.loadConcurrently(file, (contacts, percent) -> publish(new int[]{contacts, percent}));
+        } catch (FileNotFoundException e) {
+            // first run: start with an empty directory
+        }
+        return null;
+    }
+
+    @Override
+    protected void process(List<int[]> chunks) {
+        // only the latest progress matters; earlier chunks are already in the directory
+        int[] last = chunks.get(chunks.size() - 1);
+        view.directoryLoading(last[0], last[1]);
+    }
+
+    @Override
+    protected void done() {
+        try {
+            get();
+        } catch (ExecutionException e) {
+            view.directoryLoadFailed(file, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+            return;
+        } catch (InterruptedException e) {
+            view.directoryLoadFailed(file, e);
+            return;
+        }
+        try {
+            directory.enableJournal(file);
+        } catch (IOException e) {
+            view.directoryLoadFailed(file, e);
+            return;
+        }
+        view.directoryLoaded();
+    }
+
+    /**
+     * Tells the user that {@code file} did not load, with {@code failure} when there is one
+     * to show, and asks whether to save the directory over it. Returns whether they agreed.
+     */
+    static boolean confirmReplace(Component parent, File file, Exception failure) {
+        String why = failure == null ? "" : ":\n" + failure.getMessage();
+        Object[] options = {"Replace File", "Keep File"};
+        int choice = JOptionPane.showOptionDialog(parent,
+                "Could not load " + file.getPath() + why
+                        + "\n\nChanges are not saved, so the file stays as it is."
+                        + "\nReplace it with the contacts shown here?",
+                "Load Failed", JOptionPane.YES_NO_OPTION, JOptionPane.ERROR_MESSAGE, null, options, options[1]);
+        return choice == 0;
+    }
+}
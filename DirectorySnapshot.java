@@ -0,0 +1,288 @@
+package com.example.phonedir;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact binary snapshot of a directory. Layout (version 1, big-endian):
+ * <pre>
+ *   header   int magic "PDIR", byte version, long journal epoch
+ *   blocks   byte n (1..16), int flags (bit 2i favorite, bit 2i+1 blocked), n records
+ *   end      byte 0
+ *   index    long offset of every block
+ *   footer   long index offset, int block count, int contact count, int magic "PDIR"
+ * </pre>
+ * A record is the name as {@code varint shared, varint suffix length, suffix}, where
+ * {@code shared} is the number of UTF-8 bytes it has in common with the previous name in
+ * its block, followed by phone and email as {@code varint length + 1} (0 for null) and
+ * their UTF-8 bytes. Contacts are stored in {@link PhoneDirectory} key order and every
+ * block restarts prefix compression, so the index supports binary search by name.
+ */
+final class DirectorySnapshot {
+    static final int MAGIC = 0x50444952; // "PDIR"
+    static final byte VERSION = 1;
+    static final int BLOCK_SIZE = 16;
+    static final int HEADER_BYTES = 13;
+    static final int FOOTER_BYTES = 20;
+
+    private DirectorySnapshot() { }
+
+    /** Returns true if the stream starts with a binary snapshot header; the stream is reset. */
+    static boolean isSnapshot(BufferedInputStream in) throws IOException {
+        in.mark(4);
+        byte[] head = new byte[4];
+        int n = in.readNBytes(head, 0, 4);
+        in.reset();
+        return n == 4 && ((head[0] & 0xFF) << 24 | (head[1] & 0xFF) << 16 | (head[2] & 0xFF) << 8 | (head[3] & 0xFF)) == MAGIC;
+    }
+
+    /**
+     * Streams contacts into a snapshot. Contacts must arrive in ascending key order, and
+     * {@link #finish()} must be called to write the index; the target stream stays open.
+     */
+    static final class Writer {
+        private final DataOutputStream out;
+        private long position;
+        private final Contact[] block = new Contact[BLOCK_SIZE];
+        private int blockLength;
+        private long[] offsets = new long[64];
+        private int blockCount;
+        private int count;
+        private String lastKey;
+        private byte[] previousName = new byte[0];
+
+        Writer(OutputStream out, long epoch) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+            this.out.writeLong(epoch);
+            position = HEADER_BYTES;
+        }
+
+        void write(Contact c) throws IOException {
+            String key = PhoneDirectory.normalizeKey(c.getName());
+            if (lastKey != null && key.compareTo(lastKey) <= 0) {
+                throw new IllegalStateException("Contacts must be written in ascending key order: " + c.getName());
+            }
+            lastKey = key;
+            block[blockLength++] = c;
+            count++;
+            if (blockLength == BLOCK_SIZE) writeBlock();
+        }
+
+        private void writeBlock() throws IOException {
+            if (blockLength == 0) return;
+            if (blockCount == offsets.length) offsets = Arrays.copyOf(offsets, blockCount * 2);
+            offsets[blockCount++] = position;
+            int flags = 0;
+            for (int i = 0; i < blockLength; i++) {
+                if (block[i].isFavorite()) flags |= 1 << (2 * i);
+                if (block[i].isBlocked()) flags |= 1 << (2 * i + 1);
+            }
+            out.writeByte(blockLength);
+            out.writeInt(flags);
+            position += 5;
+            previousName = new byte[0];
+            for (int i = 0; i < blockLength; i++) {
+                byte[] name = utf8(block[i].getName());
+                int shared = sharedPrefix(previousName, name);
+                writeVarint(shared);
+                writeVarint(name.length - shared);
+                out.write(name, shared, name.length - shared);
+                position += name.length - shared;
+                writeNullable(block[i].getPhoneNumber());
+                writeNullable(block[i].getEmail());
+                previousName = name;
+                block[i] = null;
+            }
+            blockLength = 0;
+        }
+
+        private void writeNullable(String s) throws IOException {
+            if (s == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = utf8(s);
+            writeVarint(bytes.length + 1);
+            out.write(bytes);
+            position += bytes.length;
+        }
+
+        private void writeVarint(int v) throws IOException {
+            while ((v & ~0x7F) != 0) {
+                out.writeByte((v & 0x7F) | 0x80);
+                v >>>= 7;
+                position++;
+            }
+            out.writeByte(v);
+            position++;
+        }
+
+        void finish() throws IOException {
+            writeBlock();
+            out.writeByte(0);
+            position++;
+            long indexOffset = position;
+            for (int i = 0; i < blockCount; i++) {
+                out.writeLong(offsets[i]);
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(blockCount);
+            out.writeInt(count);
+            out.writeInt(MAGIC);
+            out.flush();
+        }
+    }
+
+    /** Streams contacts back out of a snapshot in key order. */
+    static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final long epoch;
+        private int remainingInBlock;
+        private int flags;
+        private int indexInBlock;
+        private byte[] previousName = new byte[0];
+        private boolean done;
+
+        Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 1 << 16));
+            if (this.in.readInt() != MAGIC) throw new IOException("Not a directory snapshot");
+            byte version = this.in.readByte();
+            if (version != VERSION) throw new IOException("Unsupported snapshot version: " + version);
+            this.epoch = this.in.readLong();
+        }
+
+        long epoch() {
+            return epoch;
+        }
+
+        /** Returns the next contact, or null after the last one. */
+        Contact next() throws IOException {
+            if (done) return null;
+            if (remainingInBlock == 0) {
+                int n = in.readUnsignedByte();
+                if (n == 0) {
+                    done = true;
+                    return null;
+                }
+                if (n > BLOCK_SIZE) throw new IOException("Corrupt snapshot block of " + n + " contacts");
+                remainingInBlock = n;
+                flags = in.readInt();
+                indexInBlock = 0;
+                previousName = new byte[0];
+            }
+            int shared = readVarint(in);
+            int suffix = readVarint(in);
+            if (shared > previousName.length) throw new IOException("Corrupt snapshot name prefix");
+            byte[] name = Arrays.copyOf(previousName, shared + suffix);
+            in.readFully(name, shared, suffix);
+            Contact c = new Contact(new String(name, StandardCharsets.UTF_8), readNullable(in), readNullable(in));
+            c.setFavorite((flags & (1 << (2 * indexInBlock))) != 0);
+            c.setBlocked((flags & (1 << (2 * indexInBlock + 1))) != 0);
+            previousName = name;
+            indexInBlock++;
+            remainingInBlock--;
+            return c;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Decodes the block at {@code offset} of a snapshot held in {@code buf} into {@code out},
+     * which must have room for {@link #BLOCK_SIZE} contacts, and returns how many it decoded.
+     */
+    static int readBlock(ByteBuffer buf, int offset, Contact[] out) throws IOException {
+        try {
+            ByteBuffer b = buf.duplicate();
+            b.position(offset);
+            int n = b.get() & 0xFF;
+            if (n == 0 || n > BLOCK_SIZE) throw new IOException("Corrupt snapshot block of " + n + " contacts");
+            int flags = b.getInt();
+            byte[] previousName = new byte[0];
+            for (int i = 0; i < n; i++) {
+                int shared = readVarint(b);
+                int suffix = readVarint(b);
+                if (shared > previousName.length) throw new IOException("Corrupt snapshot name prefix");
+                byte[] name = Arrays.copyOf(previousName, shared + suffix);
+                b.get(name, shared, suffix);
+                Contact c = new Contact(new String(name, StandardCharsets.UTF_8), readNullable(b), readNullable(b));
+                c.setFavorite((flags & (1 << (2 * i))) != 0);
+                c.setBlocked((flags & (1 << (2 * i + 1))) != 0);
+                out[i] = c;
+                previousName = name;
+            }
+            return n;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated snapshot block at " + offset);
+        }
+    }
+
+    /** Returns the name of the first contact in the block at {@code offset}, without decoding the rest. */
+    static String firstName(ByteBuffer buf, int offset) throws IOException {
+        try {
+            ByteBuffer b = buf.duplicate();
+            b.position(offset + 5);
+            if (readVarint(b) != 0) throw new IOException("Corrupt snapshot block at " + offset);
+            byte[] name = new byte[readVarint(b)];
+            b.get(name);
+            return new String(name, StandardCharsets.UTF_8);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated snapshot block at " + offset);
+        }
+    }
+
+    static int sharedPrefix(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < n && a[i] == b[i]) i++;
+        return i;
+    }
+
+    static int readVarint(DataInput in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Corrupt snapshot varint");
+    }
+
+    static int readVarint(ByteBuffer b) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int x = b.get() & 0xFF;
+            v |= (x & 0x7F) << shift;
+            if ((x & 0x80) == 0) return v;
+        }
+        throw new IOException("Corrupt snapshot varint");
+    }
+
+    static String readNullable(DataInput in) throws IOException {
+        int len = readVarint(in);
+        if (len == 0) return null;
+        byte[] bytes = new byte[len - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readNullable(ByteBuffer b) throws IOException {
+        int len = readVarint(b);
+        if (len == 0) return null;
+        byte[] bytes = new byte[len - 1];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.phonedir;
+
+/**
+ * Counts describing a {@link PhoneDirectory} at one moment, from {@link PhoneDirectory#stats()}.
+ * The directory keeps the counts up to date as it changes, so taking a snapshot costs the
+ * same for any number of contacts. While other threads modify a concurrent directory the
+ * counts may be a change or two apart from each other.
+ */
+public final class DirectoryStats {
+    /** Slot of the histogram that counts names not starting with a letter A-Z. */
+    static final int OTHER_INITIAL = 26;
+    static final int INITIALS = 27;
+
+    private final int total;
+    private final int favorites;
+    private final int blocked;
+    private final int withPhone;
+    private final int withEmail;
+    private final int[] initials;
+
+    DirectoryStats(int total, int favorites, int blocked, int withPhone, int withEmail, int[] initials) {
+        this.total = total;
+        this.favorites = favorites;
+        this.blocked = blocked;
+        this.withPhone = withPhone;
+        this.withEmail = withEmail;
+        this.initials = initials;
+    }
+
+    public int getTotal() { return total; }
+    public int getFavorites() { return favorites; }
+    public int getBlocked() { return blocked; }
+    public int getWithPhone() { return withPhone; }
+    public int getWithoutPhone() { return total - withPhone; }
+    public int getWithEmail() { return withEmail; }
+    public int getWithoutEmail() { return total - withEmail; }
+
+    /** Number of contacts whose name starts with {@code letter}, ignoring case. */
+    public int getInitialCount(char letter) {
+        int i = initialIndex(letter);
+        return i == OTHER_INITIAL ? 0 : initials[i];
+    }
+
+    /** Number of contacts whose name does not start with a letter A-Z. */
+    public int getOtherInitialCount() {
+        return initials[OTHER_INITIAL];
+    }
+
+    /** Histogram slot of a name: 0-25 for A-Z, ignoring case and leading blanks, else {@link #OTHER_INITIAL}. */
+    static int initialIndex(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            // skip what String.trim() would, so the slot agrees with the name's key
+            if (ch > ' ') return initialIndex(ch);
+        }
+        return OTHER_INITIAL;
+    }
+
+    static int initialIndex(char ch) {
+        if (ch >= 'a' && ch <= 'z') return ch - 'a';
+        if (ch >= 'A' && ch <= 'Z') return ch - 'A';
+        return OTHER_INITIAL;
+    }
+
+    @Override
+    public String toString() {
+        return "DirectoryStats{total=" + total + ", favorites=" + favorites + ", blocked=" + blocked
+                + ", withPhone=" + withPhone + ", withEmail=" + withEmail + "}";
+    }
+}
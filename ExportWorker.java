@@ -0,0 +1,109 @@
+package com.example.phonedir;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.Component;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Exports a window's contacts to a CSV or vCard file on a worker thread, with a
+ * cancellable progress monitor. A contact's name, phone and email never change once it
+ * is created. Its favorite and blocked flags do, in place, and the event thread may flip
+ * them while the export runs. Neither format writes them today. A format that did would
+ * get each flag whole, as the flags are volatile, but possibly from just before a flip.
+ * That is acceptable: the flip made during the export could as well have come just
+ * after it, and the next export picks it up. So the worker only needs a collection it
+ * may iterate off the event thread.
+ */
+final class ExportWorker extends SwingWorker<Integer, int[]> {
+    private final Component parent;
+    private final Collection<Contact> contacts;
+    private final File file;
+    private final ContactExporter exporter;
+    private final ProgressMonitor monitor;
+
+    private ExportWorker(Component parent, Collection<Contact> contacts, File file, ContactExporter exporter) {
+        this.parent = parent;
+        this.contacts = contacts;
+        this.file = file;
+        this.exporter = exporter;
+        monitor = new ProgressMonitor(parent, "Exporting " + file.getName(), "", 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+    }
+
+    /**
+     * Asks whether to export the whole directory or the contacts the window {@code shown},
+     * then for a file, and exports in the background. {@code shown} must not be modified
+     * afterwards; pass null when the window has no narrower list to offer.
+     */
+    static void chooseAndExport(Component parent, PhoneDirectory directory, List<Contact> shown) {
+        Collection<Contact> contacts;
+        if (shown != null && shown.size() != directory.size()) {
+            String[] labels = {String.format("All %,d contacts", directory.size()), String.format("The %,d shown", shown.size())};
+            int choice = JOptionPane.showOptionDialog(parent, "Which contacts do you want to export?", "Export Contacts",
+                    JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, labels, labels[0]);
+            if (choice < 0) return;
+            contacts = choice == 1 ? shown : allContacts(directory);
+        } else {
+            contacts = allContacts(directory);
+        }
+
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export Contacts");
+        FileNameExtensionFilter csv = new FileNameExtensionFilter("CSV (*.csv)", "csv");
+        FileNameExtensionFilter vcf = new FileNameExtensionFilter("vCard (*.vcf)", "vcf");
+        chooser.addChoosableFileFilter(csv);
+        chooser.addChoosableFileFilter(vcf);
+        chooser.setFileFilter(csv);
+        if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) return;
+        File file = chooser.getSelectedFile();
+        if (!file.getName().contains(".")) {
+            file = new File(file.getPath() + (chooser.getFileFilter() == vcf ? ".vcf" : ".csv"));
+        }
+        if (file.exists() && JOptionPane.showConfirmDialog(parent, file.getName() + " already exists. Replace it?",
+                "Export Contacts", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+        new ExportWorker(parent, contacts, file, new ContactExporter(ContactImporter.Format.of(file))).execute();
+    }
+
+    // A concurrent directory's view may be iterated while it changes; any other directory is copied first
+    private static Collection<Contact> allContacts(PhoneDirectory directory) {
+        return directory instanceof ConcurrentPhoneDirectory ? directory.sortedView() : new ArrayList<>(directory.sortedView());
+    }
+
+    @Override
+    protected Integer doInBackground() throws Exception {
+        return exporter.exportFile(contacts, file, (written, percent) -> publish(new int[]{written, percent}));
+    }
+
+    @Override
+    protected void process(List<int[]> chunks) {
+        if (monitor.isCanceled()) {
+            cancel(true);
+            return;
+        }
+        int[] last = chunks.get(chunks.size() - 1);
+        monitor.setProgress(last[1]);
+        monitor.setNote(String.format("%,d contacts", last[0]));
+    }
+
+    @Override
+    protected void done() {
+        monitor.close();
+        try {
+            JOptionPane.showMessageDialog(parent, String.format("Exported %,d contacts to %s", get(), file.getName()));
+        } catch (CancellationException e) {
+            JOptionPane.showMessageDialog(parent, "Export cancelled; " + file.getName() + " was left unchanged.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            JOptionPane.showMessageDialog(parent, "Failed to export: " + e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
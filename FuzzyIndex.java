@@ -0,0 +1,460 @@
+package com.example.phonedir;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * Typo-tolerant index over the words of contact names. Each distinct lowercased word maps
+ * to the contacts using it, and the words themselves sit in a BK-tree keyed by edit
+ * distance, so finding every word within distance k of a query word only visits the
+ * subtrees the triangle inequality cannot rule out. The combinations of near words are
+ * then tried closest first, each as a leapfrog join over name-ordered postings, which
+ * yields contacts best first and lets a top-k search stop as soon as it is full. Most
+ * directories are never searched this way, so the index is only built, in one pass over
+ * the contacts in name order, by the first search; until then adds and removes cost
+ * nothing. A concurrent index guards its structures with a read-write lock.
+ */
+class FuzzyIndex {
+    // Rebuild the tree once it holds this many more words than still have contacts
+    private static final int MAX_DEAD_WORDS = 1024;
+
+    // The directory's contacts in name order, which the build reads
+    private final Collection<Contact> contacts;
+    private final Map<String, Posting> postings = new HashMap<>();
+    private final ReadWriteLock lock;
+    private Node root;
+    private int treeSize;
+    // Set once by the first search; written under the write lock
+    private volatile boolean built;
+
+    FuzzyIndex(Collection<Contact> contacts, boolean concurrent) {
+        this.contacts = contacts;
+        this.lock = concurrent ? new ReentrantReadWriteLock() : null;
+    }
+
+    /** Splits a name or query into lowercased words of letters and digits. */
+    static String[] tokens(String s) {
+        List<String> out = new ArrayList<>(4);
+        int start = -1;
+        for (int i = 0; i <= s.length(); i++) {
+            boolean word = i < s.length() && Character.isLetterOrDigit(s.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                out.add(s.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return out.toArray(new String[0]);
+    }
+
+    /**
+     * How many edits a query word may be away from a name word: none for short words and
+     * numbers, one for three or four characters, two beyond that.
+     */
+    static int maxDistance(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.isDigit(word.charAt(i))) return 0;
+        }
+        return word.length() <= 2 ? 0 : word.length() <= 4 ? 1 : 2;
+    }
+
+    /**
+     * Damerau-Levenshtein distance: the fewest insertions, deletions, substitutions and
+     * swaps of adjacent characters from a to b, so "jhon" is one edit from "john". Unlike
+     * the restricted variant it is a true metric, which the BK-tree relies on.
+     */
+    static int distance(String a, String b) {
+        int la = a.length(), lb = b.length();
+        int inf = la + lb;
+        // d[i + 1][j + 1] is the distance between the first i chars of a and the first j of b
+        int[][] d = new int[la + 2][lb + 2];
+        d[0][0] = inf;
+        for (int i = 0; i <= la; i++) {
+            d[i + 1][0] = inf;
+            d[i + 1][1] = i;
+        }
+        for (int j = 0; j <= lb; j++) {
+            d[0][j + 1] = inf;
+            d[1][j + 1] = j;
+        }
+        // last row of a holding each character seen so far; words are short, so a list will do
+        char[] seen = new char[la];
+        int[] lastRow = new int[la];
+        int seenCount = 0;
+        for (int i = 1; i <= la; i++) {
+            char ca = a.charAt(i - 1);
+            int lastCol = 0;
+            for (int j = 1; j <= lb; j++) {
+                char cb = b.charAt(j - 1);
+                int k = 0;
+                for (int s = 0; s < seenCount; s++) {
+                    if (seen[s] == cb) {
+                        k = lastRow[s];
+                        break;
+                    }
+                }
+                int l = lastCol;
+                int cost = 1;
+                if (ca == cb) {
+                    cost = 0;
+                    lastCol = j;
+                }
+                d[i + 1][j + 1] = Math.min(Math.min(d[i][j] + cost, d[i + 1][j] + 1),
+                        Math.min(d[i][j + 1] + 1, d[k][l] + (i - k - 1) + 1 + (j - l - 1)));
+            }
+            int s = 0;
+            while (s < seenCount && seen[s] != ca) s++;
+            if (s == seenCount) seen[seenCount++] = ca;
+            lastRow[s] = i;
+        }
+        return d[la + 1][lb + 1];
+    }
+
+    // Takes the write lock even before the index is built, and the directory puts a new
+    // contact in its name order first, so a contact added while the first search builds
+    // the index is either seen by the build or added after it
+    void add(Contact c) {
+        lockWrite();
+        try {
+            if (!built) return;
+            for (String w : tokens(c.getName())) {
+                postingFor(w).add(c);
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    // The directory drops a removed contact from its name order first, so a build running
+    // before this either skips the contact or is followed by this removal
+    void remove(Contact c) {
+        lockWrite();
+        try {
+            if (!built) return;
+            for (String w : tokens(c.getName())) {
+                Posting posting = postings.get(w);
+                if (posting != null && posting.remove(c) && posting.size() == 0) postings.remove(w);
+            }
+            // a BK-tree cannot drop a word in place, so words left without contacts stay
+            // until there are enough of them to be worth a rebuild
+            if (treeSize - postings.size() > Math.max(MAX_DEAD_WORDS, postings.size())) {
+                root = null;
+                treeSize = 0;
+                for (String w : postings.keySet()) insertWord(w);
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} contacts accepted by {@code filter} that match every word
+     * of {@code query} within its {@link #maxDistance}, best first: by the sum over the query
+     * words of the distance to the closest name word, then by name. The scores agree with
+     * {@link Contact#score(String)}.
+     */
+    List<Contact> search(String[] query, int limit, Predicate<? super Contact> filter) {
+        if (query.length == 0 || limit <= 0) return new ArrayList<>();
+        if (!built) build();
+        lockRead();
+        try {
+            // the name words near each query word, nearest first
+            List<List<Match>> near = new ArrayList<>(query.length);
+            for (String word : query) {
+                List<Match> matches = new ArrayList<>();
+                collect(root, word, maxDistance(word), matches);
+                if (matches.isEmpty()) return new ArrayList<>();
+                near.add(matches);
+            }
+            return topScores(near, limit, filter);
+        } finally {
+            unlockRead();
+        }
+    }
+
+    // The contacts come in name order, so every posting is built by appending
+    private void build() {
+        lockWrite();
+        try {
+            if (built) return;
+            for (Contact c : contacts) {
+                for (String w : tokens(c.getName())) postingFor(w).append(c);
+            }
+            for (Posting posting : postings.values()) posting.trim();
+            built = true;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    private Posting postingFor(String word) {
+        Posting posting = postings.get(word);
+        if (posting == null) {
+            posting = new Posting();
+            postings.put(word, posting);
+            insertWord(word);
+        }
+        return posting;
+    }
+
+    /**
+     * Tries the combinations of one near word per query word in order of their total
+     * distance. A contact is scored by the combination of its closest words, so each one
+     * turns up exactly once, with its final score, and within a combination in name order.
+     */
+    private static List<Contact> topScores(List<List<Match>> near, int limit, Predicate<? super Contact> filter) {
+        List<Contact> best = new ArrayList<>();
+        // combinations as the chosen match index per query word, least total distance first
+        PriorityQueue<int[]> combos = new PriorityQueue<>(Comparator.comparingInt(combo -> total(near, combo)));
+        combos.add(new int[near.size()]);
+        while (!combos.isEmpty() && best.size() < limit) {
+            // the contacts of all combinations at the same total tie on score, so go by name
+            int score = total(near, combos.peek());
+            int need = limit - best.size();
+            List<Contact> tied = new ArrayList<>();
+            while (!combos.isEmpty() && total(near, combos.peek()) == score) {
+                int[] combo = combos.poll();
+                join(near, combo, need, filter, tied);
+                // successors raise one index at or after the last raised one, so each is queued once
+                int last = combo.length - 1;
+                while (last > 0 && combo[last] == 0) last--;
+                for (int i = last; i < combo.length; i++) {
+                    if (combo[i] + 1 < near.get(i).size()) {
+                        int[] next = combo.clone();
+                        next[i]++;
+                        combos.add(next);
+                    }
+                }
+            }
+            tied.sort(PhoneDirectory.BY_NAME);
+            best.addAll(tied.subList(0, Math.min(need, tied.size())));
+        }
+        return best;
+    }
+
+    private static int total(List<List<Match>> near, int[] combo) {
+        int sum = 0;
+        for (int i = 0; i < combo.length; i++) sum += near.get(i).get(combo[i]).distance;
+        return sum;
+    }
+
+    // Leapfrog join of the combination's postings: every posting seeks up to the largest
+    // name seen so far, until all of them agree on one contact
+    private static void join(List<List<Match>> near, int[] combo, int limit,
+                             Predicate<? super Contact> filter, List<Contact> out) {
+        int k = combo.length;
+        Posting[] lists = new Posting[k];
+        for (int i = 0; i < k; i++) lists[i] = near.get(i).get(combo[i]).contacts;
+        // the smallest posting proposes first, which keeps the early seeks long
+        Arrays.sort(lists, Comparator.comparingInt(Posting::size));
+        int[] at = new int[k];
+        int found = 0;
+        Contact target = lists[0].get(0);
+        int agree = 0;
+        for (int i = 0; ; i = (i + 1) % k) {
+            Posting list = lists[i];
+            at[i] = list.ceiling(at[i], target);
+            if (at[i] == list.size()) return;
+            Contact c = list.get(at[i]);
+            if (c != target) {
+                target = c;
+                agree = 1;
+                continue;
+            }
+            if (++agree < k) continue;
+            if (closest(near, combo, target) && filter.test(target)) {
+                out.add(target);
+                if (++found == limit) return;
+            }
+            if (++at[i] == list.size()) return;
+            target = list.get(at[i]);
+            agree = 1;
+        }
+    }
+
+    // Whether the combination uses c's closest word for every query word, i.e. no nearer match holds c
+    private static boolean closest(List<List<Match>> near, int[] combo, Contact c) {
+        for (int i = 0; i < combo.length; i++) {
+            List<Match> matches = near.get(i);
+            for (int j = 0; j < combo[i]; j++) {
+                if (matches.get(j).contacts.contains(c)) return false;
+            }
+        }
+        return true;
+    }
+
+    private void insertWord(String w) {
+        if (root == null) {
+            root = new Node(w);
+            treeSize++;
+            return;
+        }
+        Node n = root;
+        while (true) {
+            int d = distance(w, n.word);
+            // a word that lost its contacts and came back is still in the tree
+            if (d == 0) return;
+            Node child = n.child(d);
+            if (child == null) {
+                n.setChild(d, new Node(w));
+                treeSize++;
+                return;
+            }
+            n = child;
+        }
+    }
+
+    // Adds every live word within max of word, nearest first
+    private void collect(Node start, String word, int max, List<Match> out) {
+        if (start == null) return;
+        Deque<Node> todo = new ArrayDeque<>();
+        todo.push(start);
+        while (!todo.isEmpty()) {
+            Node n = todo.pop();
+            int d = distance(word, n.word);
+            if (d <= max) {
+                Posting contacts = postings.get(n.word);
+                if (contacts != null) out.add(new Match(contacts, d));
+            }
+            if (n.children == null) continue;
+            int from = Math.max(1, d - max);
+            int to = Math.min(n.children.length - 1, d + max);
+            for (int i = from; i <= to; i++) {
+                if (n.children[i] != null) todo.push(n.children[i]);
+            }
+        }
+        out.sort(Comparator.comparingInt(m -> m.distance));
+    }
+
+    private void lockRead() {
+        if (lock != null) lock.readLock().lock();
+    }
+
+    private void unlockRead() {
+        if (lock != null) lock.readLock().unlock();
+    }
+
+    private void lockWrite() {
+        if (lock != null) lock.writeLock().lock();
+    }
+
+    private void unlockWrite() {
+        if (lock != null) lock.writeLock().unlock();
+    }
+
+    private static final class Node {
+        final String word;
+        // Indexed by the child's distance from this word; 0 is never used
+        Node[] children;
+
+        Node(String word) {
+            this.word = word;
+        }
+
+        Node child(int d) {
+            return children == null || d >= children.length ? null : children[d];
+        }
+
+        void setChild(int d, Node child) {
+            if (children == null) {
+                children = new Node[Math.max(d + 1, 4)];
+            } else if (d >= children.length) {
+                children = Arrays.copyOf(children, Math.max(d + 1, children.length * 2));
+            }
+            children[d] = child;
+        }
+    }
+
+    private static final class Match {
+        final Posting contacts;
+        final int distance;
+
+        Match(Posting contacts, int distance) {
+            this.contacts = contacts;
+            this.distance = distance;
+        }
+    }
+
+    // The contacts using one word, in an array kept in name order: as compact as their ids
+    // would be, and a search can seek in it and stop once it has enough
+    private static final class Posting {
+        private static final Contact[] EMPTY = new Contact[0];
+
+        private Contact[] contacts = EMPTY;
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        Contact get(int i) {
+            return contacts[i];
+        }
+
+        void add(Contact c) {
+            int i = size;
+            if (size > 0 && PhoneDirectory.BY_NAME.compare(contacts[size - 1], c) >= 0) {
+                i = Arrays.binarySearch(contacts, 0, size, c, PhoneDirectory.BY_NAME);
+                if (i >= 0) return;
+                i = -i - 1;
+            }
+            if (size == contacts.length) contacts = Arrays.copyOf(contacts, size + (size >> 1) + 1);
+            System.arraycopy(contacts, i, contacts, i + 1, size - i);
+            contacts[i] = c;
+            size++;
+        }
+
+        // Adds a contact that sorts after all others, or is the last one again when its
+        // name repeats a word
+        void append(Contact c) {
+            if (size > 0 && contacts[size - 1] == c) return;
+            if (size == contacts.length) contacts = Arrays.copyOf(contacts, size + (size >> 1) + 1);
+            contacts[size++] = c;
+        }
+
+        void trim() {
+            if (contacts.length > size) contacts = Arrays.copyOf(contacts, size);
+        }
+
+        boolean remove(Contact c) {
+            int i = indexOf(c);
+            if (i < 0) return false;
+            System.arraycopy(contacts, i + 1, contacts, i, size - i - 1);
+            contacts[--size] = null;
+            // let a posting that shrank a lot give its memory back
+            if (size < contacts.length >> 2) contacts = Arrays.copyOf(contacts, size << 1);
+            return true;
+        }
+
+        boolean contains(Contact c) {
+            return indexOf(c) >= 0;
+        }
+
+        /**
+         * The position of the first contact at or after {@code from} that does not sort
+         * before {@code c}, or {@link #size()} when there is none. It gallops from
+         * {@code from}, so a join seeking forward through the posting costs little for
+         * short hops.
+         */
+        int ceiling(int from, Contact c) {
+            Comparator<Contact> order = PhoneDirectory.BY_NAME;
+            if (from >= size || order.compare(contacts[from], c) >= 0) return from;
+            int lo = from, step = 1;
+            // contacts[lo] sorts before c throughout; widen the step until it overshoots
+            while (lo + step < size && order.compare(contacts[lo + step], c) < 0) {
+                lo += step;
+                step <<= 1;
+            }
+            int i = Arrays.binarySearch(contacts, lo + 1, Math.min(size, lo + step + 1), c, order);
+            return i >= 0 ? i : -i - 1;
+        }
+
+        private int indexOf(Contact c) {
+            int i = Arrays.binarySearch(contacts, 0, size, c, PhoneDirectory.BY_NAME);
+            return i >= 0 && contacts[i] == c ? i : -1;
+        }
+    }
+}
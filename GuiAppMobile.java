@@ -8,17 +8,11 @@ public class GuiAppMobile {
 
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
-            PhoneDirectory dir;
-            try {
-                dir = PhoneDirectory.loadFromFile(new File(DATA_PATH));
-            } catch (java.io.FileNotFoundException e) {
-                dir = new PhoneDirectory();
-            } catch (Exception e) {
-                e.printStackTrace();
-                dir = new PhoneDirectory();
-            }
+            // the window shows right away and fills in as the directory streams in
+            ConcurrentPhoneDirectory dir = new ConcurrentPhoneDirectory();
             PhoneContactsUI ui = new PhoneContactsUI(dir, new File(DATA_PATH));
             ui.setVisible(true);
+            new DirectoryLoader(dir, new File(DATA_PATH), ui).execute();
         });
     }
 }
\ No newline at end of file
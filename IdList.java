@@ -0,0 +1,119 @@
+package com.example.phonedir;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.IntPredicate;
+
+/**
+ * Sorted array of contact ids (see {@link ContactIds}): the posting list of one trigram.
+ * Ids are mostly added in increasing order, which appends in place while the array has
+ * room; every other change returns a new list and leaves this one as it was. A reader
+ * that takes {@link #size()} once and reads no further than it sees a consistent list
+ * while a writer appends, so an index can share its lists between threads without
+ * locking its readers. Copying a long list for every removal would be slow, so removals
+ * are only counted, and the ids that went stale are purged in one copy once they could
+ * make up half the list. Writers must not race each other, and must store the list each
+ * change returns.
+ */
+final class IdList {
+    static final IdList EMPTY = new IdList(new int[0], 0);
+    private static final AtomicIntegerFieldUpdater<IdList> APPENDED =
+            AtomicIntegerFieldUpdater.newUpdater(IdList.class, "appended");
+
+    private final int[] ids;
+    // Ids the array held when the list was made, and how many were appended in place since
+    private final int base;
+    private volatile int appended;
+    // Removals counted since the list was made; only its writers read it
+    private int removed;
+
+    private IdList(int[] ids, int size) {
+        this.ids = ids;
+        this.base = size;
+    }
+
+    int size() {
+        return base + appended;
+    }
+
+    int get(int i) {
+        return ids[i];
+    }
+
+    /** Adds {@code id} unless it is already there. */
+    IdList add(int id) {
+        int size = size();
+        if (size == 0 || ids[size - 1] < id) return append(id);
+        int i = Arrays.binarySearch(ids, 0, size, id);
+        if (i >= 0) return this;
+        i = -i - 1;
+        int[] copy = new int[size == ids.length ? grown(size) : ids.length];
+        System.arraycopy(ids, 0, copy, 0, i);
+        copy[i] = id;
+        System.arraycopy(ids, i, copy, i + 1, size - i);
+        return new IdList(copy, size + 1);
+    }
+
+    /** Adds an id larger than any in the list. */
+    IdList append(int id) {
+        int size = size();
+        if (size == ids.length) {
+            int[] copy = Arrays.copyOf(ids, grown(size));
+            copy[size] = id;
+            return new IdList(copy, size + 1);
+        }
+        ids[size] = id;
+        // publishes the id to readers that see the new size; an ordered store is enough
+        // for that, and costs a bulk build far less than a volatile one
+        APPENDED.lazySet(this, size + 1 - base);
+        return this;
+    }
+
+    /**
+     * Counts the removal of an id from the list, without removing it, and returns whether
+     * enough have been counted that the list should be {@linkplain #purge purged}.
+     */
+    boolean countRemoval() {
+        return ++removed > size() >> 1;
+    }
+
+    /** Keeps only the ids that {@code live} accepts. */
+    IdList purge(IntPredicate live) {
+        int size = size();
+        int[] kept = new int[size];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (live.test(ids[i])) kept[n++] = ids[i];
+        }
+        if (n == 0) return EMPTY;
+        // let a list that shrank a lot give its memory back
+        return new IdList(n < size >> 2 ? Arrays.copyOf(kept, n << 1) : kept, n);
+    }
+
+    /**
+     * The position of the first id in {@code [from, to)} that is not less than {@code id},
+     * or {@code to} when there is none; {@code to} is a size this list had. It gallops from
+     * {@code from}, so a join that seeks forward through the list costs little for short hops.
+     */
+    int seek(int from, int to, int id) {
+        if (from >= to || ids[from] >= id) return from;
+        int lo = from, step = 1;
+        // ids[lo] < id throughout; widen the step until it overshoots
+        while (lo + step < to && ids[lo + step] < id) {
+            lo += step;
+            step <<= 1;
+        }
+        int i = Arrays.binarySearch(ids, lo + 1, Math.min(to, lo + step + 1), id);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    /** Drops the spare capacity left by appending, once a bulk build is done. */
+    IdList trim() {
+        int size = size();
+        return ids.length > size ? new IdList(Arrays.copyOf(ids, size), size) : this;
+    }
+
+    private static int grown(int size) {
+        return size + (size >> 1) + 1;
+    }
+}
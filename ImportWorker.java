@@ -0,0 +1,117 @@
+package com.example.phonedir;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.Component;
+import java.awt.Cursor;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Imports a CSV or vCard file into a window's directory on a worker thread, with a
+ * cancellable progress monitor. A directory that is not thread-safe is imported on the
+ * event thread instead.
+ */
+final class ImportWorker extends SwingWorker<ContactImporter.Result, int[]> {
+    private final Component parent;
+    private final PhoneDirectory directory;
+    private final File file;
+    private final ContactImporter importer;
+    private final ProgressMonitor monitor;
+    private final Runnable refresh;
+
+    private ImportWorker(Component parent, PhoneDirectory directory, File file, ContactImporter importer, Runnable refresh) {
+        this.parent = parent;
+        this.directory = directory;
+        this.file = file;
+        this.importer = importer;
+        this.refresh = refresh;
+        monitor = new ProgressMonitor(parent, "Importing " + file.getName(), "", 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+    }
+
+    /**
+     * Asks for a file and how to treat duplicates, then imports it into {@code directory}.
+     * {@code refresh} runs on the event thread once the import is over, even if it failed.
+     */
+    static void chooseAndImport(Component parent, PhoneDirectory directory, Runnable refresh) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import Contacts");
+        chooser.setFileFilter(new FileNameExtensionFilter("Contacts (CSV, vCard)", "csv", "vcf", "vcard"));
+        if (chooser.showOpenDialog(parent) != JFileChooser.APPROVE_OPTION) return;
+
+        ContactImporter.DuplicatePolicy[] policies = ContactImporter.DuplicatePolicy.values();
+        String[] labels = {"Skip", "Overwrite", "Skip and report"};
+        int choice = JOptionPane.showOptionDialog(parent, "When a contact with the same name already exists:",
+                "Import Contacts", JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, labels, labels[0]);
+        if (choice < 0) return;
+        ContactImporter importer = new ContactImporter(policies[choice]);
+
+        File file = chooser.getSelectedFile();
+        if (directory instanceof ConcurrentPhoneDirectory) {
+            new ImportWorker(parent, directory, file, importer, refresh).execute();
+            return;
+        }
+        parent.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        try {
+            showResult(parent, file, importer.importFile(file, directory, null));
+        } catch (IOException e) {
+            showFailure(parent, e);
+        } finally {
+            parent.setCursor(Cursor.getDefaultCursor());
+            refresh.run();
+        }
+    }
+
+    @Override
+    protected ContactImporter.Result doInBackground() throws Exception {
+        return importer.importFile(file, directory, (rows, percent) -> publish(new int[]{rows, percent}));
+    }
+
+    @Override
+    protected void process(List<int[]> chunks) {
+        if (monitor.isCanceled()) {
+            cancel(true);
+            return;
+        }
+        int[] last = chunks.get(chunks.size() - 1);
+        monitor.setProgress(last[1]);
+        monitor.setNote(String.format("%,d rows", last[0]));
+    }
+
+    @Override
+    protected void done() {
+        monitor.close();
+        refresh.run();
+        try {
+            showResult(parent, file, get());
+        } catch (CancellationException e) {
+            JOptionPane.showMessageDialog(parent, "Import cancelled; contacts read so far were kept.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof InterruptedIOException)) showFailure(parent, e.getCause());
+        }
+    }
+
+    private static void showResult(Component parent, File file, ContactImporter.Result result) {
+        StringBuilder msg = new StringBuilder("Imported " + file.getName() + "\n")
+                .append(String.format("%,d added, %,d replaced, %,d duplicates, %,d invalid rows%n",
+                        result.getAdded(), result.getReplaced(), result.getDuplicates(), result.getInvalid()))
+                .append(String.format("%,d rows in %.1f s (%,.0f rows/s)",
+                        result.getRows(), result.getElapsedNanos() / 1e9, result.rowsPerSecond()));
+        if (!result.getDuplicateNames().isEmpty()) {
+            msg.append("\n\nAlready in the directory:\n").append(String.join(", ", result.getDuplicateNames()));
+            if (result.getDuplicates() > result.getDuplicateNames().size()) msg.append(", ...");
+        }
+        JOptionPane.showMessageDialog(parent, msg.toString(), "Import Contacts", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private static void showFailure(Component parent, Throwable e) {
+        JOptionPane.showMessageDialog(parent, "Failed to import: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.phonedir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Read-only directory over a memory-mapped binary snapshot. Opening it reads only the
+ * snapshot's header and footer plus any journaled changes, so startup time and heap use do
+ * not grow with the number of contacts. {@link #getByName(String)} binary-searches the
+ * snapshot's block index and decodes a single block; scans decode blocks as they go.
+ * Contacts returned are detached copies, so changing their flags is not persisted.
+ */
+public final class MappedDirectory implements Closeable {
+    private static final Comparator<Contact> BY_NAME = Comparator.comparing(Contact::getName, PhoneDirectory.NAME_ORDER);
+
+    private final FileChannel channel;
+    private final ByteBuffer buf;
+    private final int indexOffset;
+    private final int blockCount;
+    // Changes journaled after the snapshot, by normalized name; a null value marks a removal
+    private final Map<String, Contact> overlay = new HashMap<>();
+    private int size;
+
+    private MappedDirectory(FileChannel channel, ByteBuffer buf) throws IOException {
+        this.channel = channel;
+        this.buf = buf;
+        if (buf.limit() >= 4 && buf.getInt(0) == CompressedSnapshot.MAGIC) {
+            throw new IOException("Compressed snapshots cannot be mapped; save the directory without a codec first");
+        }
+        int footer = buf.limit() - DirectorySnapshot.FOOTER_BYTES;
+        if (footer < DirectorySnapshot.HEADER_BYTES
+                || buf.getInt(0) != DirectorySnapshot.MAGIC
+                || buf.getInt(buf.limit() - 4) != DirectorySnapshot.MAGIC) {
+            throw new IOException("Not a complete directory snapshot");
+        }
+        byte version = buf.get(4);
+        if (version != DirectorySnapshot.VERSION) throw new IOException("Unsupported snapshot version: " + version);
+        long index = buf.getLong(footer);
+        blockCount = buf.getInt(footer + 8);
+        if (index < DirectorySnapshot.HEADER_BYTES || index + 8L * blockCount != footer) {
+            throw new IOException("Corrupt snapshot index");
+        }
+        indexOffset = (int) index;
+        size = buf.getInt(footer + 12);
+    }
+
+    /**
+     * Maps a snapshot written by {@link PhoneDirectory#saveToFile(File)} and applies the
+     * changes journaled next to it. Legacy serialized files cannot be mapped; load and save
+     * them once with {@link PhoneDirectory} to convert them.
+     */
+    public static MappedDirectory open(File file) throws IOException {
+        if (file == null) throw new IllegalArgumentException("file must not be null");
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) throw new IOException("Snapshot too large to map: " + length + " bytes");
+            MappedDirectory dir = new MappedDirectory(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+            return dir.withJournal(file);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private MappedDirectory withJournal(File file) throws IOException {
+        DirectoryJournal.read(file, buf.getLong(5), new DirectoryJournal.Target() {
+            @Override
+            public void put(Contact c) {
+                overlay.put(PhoneDirectory.normalizeKey(c.getName()), c);
+            }
+
+            @Override
+            public void remove(String name) {
+                overlay.put(PhoneDirectory.normalizeKey(name), null);
+            }
+
+            @Override
+            public void setFlags(String name, boolean favorite, boolean blocked) {
+                Contact c = getByName(name);
+                if (c != null) {
+                    c.setFavorite(favorite);
+                    c.setBlocked(blocked);
+                    overlay.put(PhoneDirectory.normalizeKey(name), c);
+                }
+            }
+        });
+        for (Map.Entry<String, Contact> e : overlay.entrySet()) {
+            boolean inSnapshot = findInSnapshot(e.getKey()) != null;
+            if (e.getValue() != null && !inSnapshot) size++;
+            if (e.getValue() == null && inSnapshot) size--;
+        }
+        return this;
+    }
+
+    public Contact getByName(String name) {
+        if (name == null) return null;
+        String key = PhoneDirectory.normalizeKey(name);
+        if (overlay.containsKey(key)) return overlay.get(key);
+        return findInSnapshot(key);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Same results as {@link PhoneDirectory#search(String)}, found by decoding the whole snapshot. */
+    public List<Contact> search(String query) {
+        List<Contact> results = new ArrayList<>();
+        if (query == null) return results;
+        String q = query.toLowerCase();
+        Contact[] block = new Contact[DirectorySnapshot.BLOCK_SIZE];
+        for (int i = 0; i < blockCount; i++) {
+            int n = readBlock(i, block);
+            for (int j = 0; j < n; j++) {
+                Contact c = block[j];
+                if (!overlay.containsKey(PhoneDirectory.normalizeKey(c.getName())) && c.matchesLowered(q)) {
+                    results.add(c);
+                }
+            }
+        }
+        for (Contact c : overlay.values()) {
+            if (c != null && c.matchesLowered(q)) results.add(c);
+        }
+        results.sort(BY_NAME);
+        return results;
+    }
+
+    // Blocks hold contacts in key order, so the only candidate is the last block starting at or before the key
+    private Contact findInSnapshot(String key) {
+        int lo = 0;
+        int hi = blockCount - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (PhoneDirectory.normalizeKey(firstName(mid)).compareTo(key) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (found < 0) return null;
+        Contact[] block = new Contact[DirectorySnapshot.BLOCK_SIZE];
+        int n = readBlock(found, block);
+        for (int i = 0; i < n; i++) {
+            if (PhoneDirectory.normalizeKey(block[i].getName()).equals(key)) return block[i];
+        }
+        return null;
+    }
+
+    private String firstName(int block) {
+        try {
+            return DirectorySnapshot.firstName(buf, blockOffset(block));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int readBlock(int block, Contact[] out) {
+        try {
+            return DirectorySnapshot.readBlock(buf, blockOffset(block), out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int blockOffset(int block) {
+        return (int) buf.getLong(indexOffset + 8 * block);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -7,17 +7,11 @@ public class MaterialApp {
     private static final String DATA_PATH = "data/phonebook.ser";
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
-            PhoneDirectory dir;
-            try {
-                dir = PhoneDirectory.loadFromFile(new File(DATA_PATH));
-            } catch (java.io.FileNotFoundException e) {
-                dir = new PhoneDirectory();
-            } catch (Exception e) {
-                e.printStackTrace();
-                dir = new PhoneDirectory();
-            }
+            // the window shows right away and fills in as the directory streams in
+            ConcurrentPhoneDirectory dir = new ConcurrentPhoneDirectory();
             MaterialContactsUI ui = new MaterialContactsUI(dir, new File(DATA_PATH));
             ui.setVisible(true);
+            new DirectoryLoader(dir, new File(DATA_PATH), ui).execute();
         });
     }
 }
\ No newline at end of file
@@ -3,25 +3,32 @@ package com.example.phonedir;
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.*;
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Locale;
 
-public class MaterialContactsUI extends JFrame {
+public class MaterialContactsUI extends JFrame implements DirectoryLoader.View, SwingChangeQueue.View, AutoSaver.View {
     private enum FilterMode { ALL, FAVORITES, BLOCKED }
+    // Past this many changes at once, refreshing is cheaper than patching row by row
+    private static final int PATCH_LIMIT = 200;
 
     private final PhoneDirectory directory;
-    private final File dataFile;
+    private final AutoSaver autoSaver;
 
     private Theme theme = Theme.fromBase(new Color(0x16C1B5), false);
 
     private final JTextField search = new PlaceholderTextField("Search contacts", 22);
-    private final DefaultListModel<Contact> model = new DefaultListModel<>();
+    private final ContactListModel model = new ContactListModel();
+    // A-Z, then # for names not starting with a letter
+    private final JButton[] letterButtons = new JButton[27];
     private final JList<Contact> list = new JList<>(model);
 
     private JTabbedPane tabs;
@@ -42,16 +49,22 @@ public class MaterialContactsUI extends JFrame {
     private JButton undoButton;
     private Timer undoTimer;
     private Contact lastDeleted;
+    // Set while a background load fills the directory
+    private boolean loading;
 
     public MaterialContactsUI(PhoneDirectory directory, File dataFile) {
         super("Phone Directory");
         this.directory = directory;
-        this.dataFile = dataFile;
         Style.installGlobalFont("Segoe UI", 13);
         build();
         getContentPane().setBackground(theme.bg);
         refresh("");
+        directory.addDirectoryListener(new SwingChangeQueue(this));
+        autoSaver = new AutoSaver(directory, dataFile, AutoSaver.DEFAULT_QUIET_MS, this);
         setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override public void windowClosing(WindowEvent e) { onClose(); }
+        });
         setSize(420, 680);
         setLocationByPlatform(true);
     }
@@ -61,8 +74,16 @@ public class MaterialContactsUI extends JFrame {
         GradientPanel header = new GradientPanel(theme.headerStart, theme.headerEnd);
         header.setLayout(new BorderLayout());
 
-        // Simple theme menu in the frame menu bar
+        // File and theme menus in the frame menu bar
         JMenuBar mb = new JMenuBar();
+        JMenu fileMenu = new JMenu("File");
+        JMenuItem importItem = new JMenuItem("Import...");
+        importItem.addActionListener(e -> ImportWorker.chooseAndImport(this, directory, () -> refresh(search.getText())));
+        JMenuItem exportItem = new JMenuItem("Export...");
+        exportItem.addActionListener(e -> ExportWorker.chooseAndExport(this, directory, model.getContacts()));
+        fileMenu.add(importItem);
+        fileMenu.add(exportItem);
+        mb.add(fileMenu);
         JMenu themeMenu = new JMenu("Theme");
         JMenuItem oceanItem = new JMenuItem("Ocean");
         JMenuItem emeraldItem = new JMenuItem("Emerald");
@@ -157,6 +178,8 @@ public class MaterialContactsUI extends JFrame {
         add(header, BorderLayout.NORTH);
 
         list.setCellRenderer(new ContactCell());
+        // a fixed width as well as height, or the list measures every row each time it changes
+        list.setPrototypeCellValue(new Contact("Prototype Contact Name", "+1 (555) 555-5555", null));
         list.setFixedCellHeight(76);
         list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 
@@ -252,7 +275,6 @@ public class MaterialContactsUI extends JFrame {
         MaterialAddDialog dlg = new MaterialAddDialog(this, c -> {
             try {
                 directory.addContact(c);
-                refresh(search.getText());
             } catch (DuplicateContactException ex) {
                 JOptionPane.showMessageDialog(this, ex.getMessage(), "Duplicate", JOptionPane.WARNING_MESSAGE);
             }
@@ -273,7 +295,6 @@ public class MaterialContactsUI extends JFrame {
                     directory.removeByName(existing.getName());
                 }
                 directory.addContact(c);
-                refresh(search.getText());
             } catch (DuplicateContactException ex) {
                 JOptionPane.showMessageDialog(this, ex.getMessage(), "Duplicate", JOptionPane.WARNING_MESSAGE);
             }
@@ -290,7 +311,6 @@ public class MaterialContactsUI extends JFrame {
         if (conf == JOptionPane.OK_OPTION) {
             lastDeleted = c;
             directory.removeByName(c.getName());
-            refresh(search.getText());
             showUndoBar("Deleted " + c.getName());
         }
     }
@@ -300,7 +320,6 @@ public class MaterialContactsUI extends JFrame {
         if (idx < 0) return;
         Contact c = model.get(idx);
         c.setFavorite(!c.isFavorite());
-        refresh(search.getText());
     }
 
     private void onToggleBlocked() {
@@ -308,18 +327,86 @@ public class MaterialContactsUI extends JFrame {
         if (idx < 0) return;
         Contact c = model.get(idx);
         c.setBlocked(!c.isBlocked());
+    }
+
+    @Override
+    public void directoryLoading(int contacts, int percent) {
+        loading = true;
+        setTitle("Phone Directory (loading " + percent + "%)");
+        refresh(search.getText());
+    }
+
+    @Override
+    public void directoryLoaded() {
+        loading = false;
+        setTitle("Phone Directory");
+        refresh(search.getText());
+        autoSaver.start();
+    }
+
+    @Override
+    public void directoryLoadFailed(File file, Exception e) {
+        loading = false;
+        setTitle("Phone Directory (not saved)");
         refresh(search.getText());
+        if (DirectoryLoader.confirmReplace(this, file, e)) {
+            setTitle("Phone Directory");
+            autoSaver.startReplacing();
+        }
+    }
+
+    @Override
+    public void directorySaved(File file) {
+        JOptionPane.showMessageDialog(this, "Saved to " + file.getPath());
+    }
+
+    @Override
+    public void directorySaveFailed(File file, IOException e) {
+        JOptionPane.showMessageDialog(this, "Failed to save: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    // Last chance to save edits the autosave has not written yet
+    private void onClose() {
+        try {
+            autoSaver.close();
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "Failed to save: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    @Override
+    public void contactsChanged(List<DirectoryEvent> events) {
+        // while loading, the loader refreshes the list chunk by chunk
+        if (loading) return;
+        if (events.size() > PATCH_LIMIT) {
+            contactsReset();
+            return;
+        }
+        String q = search.getText() == null ? "" : search.getText();
+        FilterMode mode = filterMode;
+        for (DirectoryEvent e : events) {
+            model.apply(e, c -> (q.isBlank() || c.matches(q))
+                    && (mode != FilterMode.FAVORITES || c.isFavorite())
+                    && (mode != FilterMode.BLOCKED || c.isBlocked()));
+        }
+    }
+
+    @Override
+    public void contactsReset() {
+        if (!loading) refresh(search.getText());
     }
 
     private void refresh(String q) {
-        List<Contact> src = (q == null || q.isBlank()) ? directory.listAll() : directory.search(q);
-        model.clear();
+        Collection<Contact> src = (q == null || q.isBlank()) ? directory.sortedView() : directory.search(q);
+        List<Contact> shown = new ArrayList<>();
         for (Contact c : src) {
             if (filterMode == FilterMode.FAVORITES && !c.isFavorite()) continue;
             if (filterMode == FilterMode.BLOCKED && !c.isBlocked()) continue;
-            model.addElement(c);
+            shown.add(c);
         }
+        model.setContacts(shown);
         if (!model.isEmpty()) list.setSelectedIndex(0);
+        else list.clearSelection();
     }
 
     private JPanel roundedField(JTextField tf) {
@@ -427,6 +514,7 @@ public class MaterialContactsUI extends JFrame {
             b.setFocusPainted(false);
             b.setFont(b.getFont().deriveFont(10f));
             b.addActionListener(e -> jumpToLetter(ch));
+            letterButtons[c - 'A'] = b;
             letters.add(b);
         }
         JButton hash = new JButton("#");
@@ -434,20 +522,34 @@ public class MaterialContactsUI extends JFrame {
         hash.setFocusPainted(false);
         hash.setFont(hash.getFont().deriveFont(10f));
         hash.addActionListener(e -> jumpToOther());
+        letterButtons[26] = hash;
         letters.add(hash);
+        model.addListDataListener(new ListDataListener() {
+            @Override public void intervalAdded(ListDataEvent e) { updateAlphabetBar(); }
+            @Override public void intervalRemoved(ListDataEvent e) { updateAlphabetBar(); }
+            @Override public void contentsChanged(ListDataEvent e) { updateAlphabetBar(); }
+        });
+        updateAlphabetBar();
         return letters;
     }
 
-    private void jumpToLetter(char ch) {
-        int target = -1;
-        String s = String.valueOf(ch).toLowerCase(Locale.ROOT);
-        for (int i = 0; i < model.size(); i++) {
-            String name = model.get(i).getName();
-            if (name != null && name.toLowerCase(Locale.ROOT).startsWith(s)) {
-                target = i;
-                break;
-            }
+    private void updateAlphabetBar() {
+        for (int i = 0; i < letterButtons.length; i++) {
+            int count = i < 26 ? model.letterCount((char) ('A' + i)) : model.otherCount();
+            letterButtons[i].setEnabled(count > 0);
+            letterButtons[i].setToolTipText(String.format("%,d contacts", count));
         }
+    }
+
+    private void jumpToLetter(char ch) {
+        jumpTo(model.firstIndexOf(ch));
+    }
+
+    private void jumpToOther() {
+        jumpTo(model.firstOtherIndex());
+    }
+
+    private void jumpTo(int target) {
         if (target >= 0) {
             list.setSelectedIndex(target);
             list.ensureIndexIsVisible(target);
@@ -455,13 +557,6 @@ public class MaterialContactsUI extends JFrame {
         }
     }
 
-    private void jumpToOther() {
-        if (model.isEmpty()) return;
-        list.setSelectedIndex(0);
-        list.ensureIndexIsVisible(0);
-        onShowDetails();
-    }
-
     private void applyThemeColors(GradientPanel header) {
         if (header != null) {
             header.setColors(theme.headerStart, theme.headerEnd);
@@ -494,7 +589,6 @@ public class MaterialContactsUI extends JFrame {
         }
         try {
             directory.addContact(lastDeleted);
-            refresh(search.getText());
             showDetailsInTab(lastDeleted);
         } catch (DuplicateContactException ex) {
             JOptionPane.showMessageDialog(this, ex.getMessage(), "Duplicate", JOptionPane.WARNING_MESSAGE);
@@ -3,6 +3,8 @@ package com.example.phonedir;
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.ActionEvent;
@@ -10,16 +12,28 @@ import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+public class PhoneContactsUI extends JFrame implements DirectoryLoader.View, SwingChangeQueue.View, AutoSaver.View {
+    // Quiet period after the last keystroke before the live search runs
+    private static final int SEARCH_DELAY_MS = 150;
+    // Past this many changes at once, searching again is cheaper than patching row by row
+    private static final int PATCH_LIMIT = 200;
+    // Fuzzy search ranks its results, and only the best ones are worth listing
+    private static final int FUZZY_LIMIT = 200;
 
-public class PhoneContactsUI extends JFrame {
     private final PhoneDirectory directory;
-    private final File dataFile;
+    private final SearchPipeline searchPipeline;
+    private final AutoSaver autoSaver;
 
     // Theme controls
     private Theme theme = Theme.ocean(false);
@@ -29,16 +43,17 @@ public class PhoneContactsUI extends JFrame {
     private final JTextField searchField = new JTextField(18);
     private final JCheckBox onlyFavorites = new JCheckBox("Favorites only");
     private final JCheckBox hideBlocked = new JCheckBox("Hide blocked", true);
+    private final JCheckBox fuzzySearch = new JCheckBox("Fuzzy");
 
-    private final DefaultListModel<Contact> listModel = new DefaultListModel<>();
+    private final ContactListModel listModel = new ContactListModel();
     private final JList<Contact> contactList = new JList<>(listModel);
 
     // Favorites page model
-    private final DefaultListModel<Contact> favoritesModel = new DefaultListModel<>();
+    private final ContactListModel favoritesModel = new ContactListModel();
     private final JList<Contact> favoritesList = new JList<>(favoritesModel);
 
     // Blocked page model
-    private final DefaultListModel<Contact> blockedModel = new DefaultListModel<>();
+    private final ContactListModel blockedModel = new ContactListModel();
     private final JList<Contact> blockedList = new JList<>(blockedModel);
 
     // Add page fields
@@ -54,19 +69,34 @@ public class PhoneContactsUI extends JFrame {
 
     private final JButton favBtn = new JButton();
     private final JButton blockBtn = new JButton();
+    // A-Z, then # for names not starting with a letter
+    private final JButton[] letterButtons = new JButton[27];
 
     private GradientPanel headerGradient;
+    // Set while a background load fills the directory
+    private boolean loading;
+    // The file the directory failed to load from; nothing is saved over it while set
+    private File unloadedFile;
+    // Selected in place of the first row when the search result on its way is shown
+    private Contact selectOnRefresh;
 
     public PhoneContactsUI(PhoneDirectory directory, File dataFile) {
         super("Contacts");
         this.directory = directory;
-        this.dataFile = dataFile;
+        // searching off the event thread is only safe while the UI edits a concurrent directory
+        this.searchPipeline = new SearchPipeline(SEARCH_DELAY_MS, directory instanceof ConcurrentPhoneDirectory,
+                e -> JOptionPane.showMessageDialog(this, "Search failed: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
         applyTheme();
         // Clean typography across app
         Style.installGlobalFont("Segoe UI", 13);
         buildUI();
         refreshList();
+        directory.addDirectoryListener(new SwingChangeQueue(this));
+        autoSaver = new AutoSaver(directory, dataFile, AutoSaver.DEFAULT_QUIET_MS, this);
         setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override public void windowClosing(WindowEvent e) { onClose(); }
+        });
         setSize(900, 560);
         setLocationByPlatform(true);
     }
@@ -93,6 +123,7 @@ public class PhoneContactsUI extends JFrame {
         searchField.setForeground(theme.text);
         onlyFavorites.setForeground(theme.text);
         hideBlocked.setForeground(theme.text);
+        fuzzySearch.setForeground(theme.text);
 
         if (headerGradient != null) {
             headerGradient.setColors(theme.headerStart, theme.headerEnd);
@@ -123,6 +154,9 @@ public class PhoneContactsUI extends JFrame {
         top.setBorder(Style.padding(8, 12, 8, 12));
         top.add(new JLabel("Search"));
         top.add(searchField);
+        fuzzySearch.setToolTipText("Tolerate typos in names and list the closest matches first");
+        fuzzySearch.addActionListener(e -> onTabChanged());
+        top.add(fuzzySearch);
         onlyFavorites.addActionListener(e -> refreshList());
         hideBlocked.addActionListener(e -> refreshList());
         top.add(onlyFavorites);
@@ -146,7 +180,7 @@ public class PhoneContactsUI extends JFrame {
         JMenuBar menuBar = new JMenuBar();
         JMenu toolsMenu = new JMenu("Tools");
         JMenuItem quickAddItem = new JMenuItem(new AbstractAction("Quick Add...") {
-            @Override public void actionPerformed(ActionEvent e) { new QuickAddDialog(PhoneContactsUI.this, directory, created -> { refreshList(); selectByName(created.getName()); }).setVisible(true); }
+            @Override public void actionPerformed(ActionEvent e) { new QuickAddDialog(PhoneContactsUI.this, directory, created -> selectContact(created)).setVisible(true); }
         });
         JMenuItem themeDesignerItem = new JMenuItem(new AbstractAction("Theme Designer...") {
             @Override public void actionPerformed(ActionEvent e) { new ThemeDesignerFrame(PhoneContactsUI.this).setVisible(true); }
@@ -154,7 +188,15 @@ public class PhoneContactsUI extends JFrame {
         JMenuItem statsItem = new JMenuItem(new AbstractAction("Stats...") {
             @Override public void actionPerformed(ActionEvent e) { new StatsFrame(directory).setVisible(true); }
         });
+        JMenuItem importItem = new JMenuItem(new AbstractAction("Import...") {
+            @Override public void actionPerformed(ActionEvent e) { ImportWorker.chooseAndImport(PhoneContactsUI.this, directory, PhoneContactsUI.this::onTabChanged); }
+        });
+        JMenuItem exportItem = new JMenuItem(new AbstractAction("Export...") {
+            @Override public void actionPerformed(ActionEvent e) { ExportWorker.chooseAndExport(PhoneContactsUI.this, directory, shownContacts()); }
+        });
         toolsMenu.add(quickAddItem);
+        toolsMenu.add(importItem);
+        toolsMenu.add(exportItem);
         toolsMenu.add(themeDesignerItem);
         toolsMenu.add(statsItem);
         menuBar.add(toolsMenu);
@@ -180,28 +222,22 @@ public class PhoneContactsUI extends JFrame {
         tabs.addChangeListener(e -> onTabChanged());
         add(tabs, BorderLayout.CENTER);
 
-        // Live search
+        // Live search: debounced, and run in the background when the directory allows it
         searchField.getDocument().addDocumentListener(new DocumentListener() {
-            private void doRefresh() {
-                if (tabs != null) {
-                    int idx = tabs.getSelectedIndex();
-                    if (idx == 1) refreshFavoritesList();
-                    else if (idx == 2) refreshBlockedList();
-                    else refreshList();
-                } else {
-                    refreshList();
-                }
-            }
-            public void insertUpdate(DocumentEvent e) { doRefresh(); }
-            public void removeUpdate(DocumentEvent e) { doRefresh(); }
-            public void changedUpdate(DocumentEvent e) { doRefresh(); }
+            public void insertUpdate(DocumentEvent e) { onSearchChanged(); }
+            public void removeUpdate(DocumentEvent e) { onSearchChanged(); }
+            public void changedUpdate(DocumentEvent e) { onSearchChanged(); }
         });
 
         // Explicit search action (Enter) -> show popup if none found
         searchField.addActionListener(e -> {
             String q = searchField.getText();
             try {
-                directory.searchOrThrow(q);
+                if (!isFuzzy(currentQuery())) {
+                    directory.searchOrThrow(q);
+                } else if (directory.fuzzySearch(q, 1).isEmpty()) {
+                    throw new ContactNotFoundException("No contacts found for: " + q);
+                }
                 // If found, ensure list reflects current query
                 if (tabs != null && tabs.getSelectedIndex() == 1) refreshBlockedList();
                 else refreshList();
@@ -229,7 +265,7 @@ public class PhoneContactsUI extends JFrame {
         am.put("edit", new AbstractAction() { public void actionPerformed(ActionEvent e) { onEdit(); } });
         // New shortcuts
         im.put(KeyStroke.getKeyStroke(KeyEvent.VK_N, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK), "quickAdd");
-        am.put("quickAdd", new AbstractAction() { public void actionPerformed(ActionEvent e) { new QuickAddDialog(PhoneContactsUI.this, directory, created -> { refreshList(); selectByName(created.getName()); }).setVisible(true); } });
+        am.put("quickAdd", new AbstractAction() { public void actionPerformed(ActionEvent e) { new QuickAddDialog(PhoneContactsUI.this, directory, created -> selectContact(created)).setVisible(true); } });
         im.put(KeyStroke.getKeyStroke(KeyEvent.VK_T, InputEvent.CTRL_DOWN_MASK), "themeDesigner");
         am.put("themeDesigner", new AbstractAction() { public void actionPerformed(ActionEvent e) { new ThemeDesignerFrame(PhoneContactsUI.this).setVisible(true); } });
         im.put(KeyStroke.getKeyStroke(KeyEvent.VK_I, InputEvent.CTRL_DOWN_MASK), "stats");
@@ -242,6 +278,7 @@ public class PhoneContactsUI extends JFrame {
 
         contactList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         contactList.setCellRenderer(new ContactRenderer());
+        contactList.setPrototypeCellValue(ContactRenderer.PROTOTYPE);
         contactList.addListSelectionListener(e -> updateDetails(contactList.getSelectedValue()));
         JScrollPane listScroll = new JScrollPane(contactList);
 
@@ -268,6 +305,7 @@ public class PhoneContactsUI extends JFrame {
         JPanel panel = new JPanel(new BorderLayout(6, 6));
         favoritesList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         favoritesList.setCellRenderer(new ContactRenderer());
+        favoritesList.setPrototypeCellValue(ContactRenderer.PROTOTYPE);
         favoritesList.addMouseListener(new MouseAdapter() {
             private void maybeShow(MouseEvent e) {
                 if (e.isPopupTrigger()) {
@@ -287,8 +325,6 @@ public class PhoneContactsUI extends JFrame {
                 Contact c = favoritesList.getSelectedValue();
                 if (c == null) return;
                 c.setFavorite(false);
-                refreshFavoritesList();
-                refreshList();
             }
         });
         tintButton(unfavBtn, theme.baseDark, Color.WHITE);
@@ -302,6 +338,7 @@ public class PhoneContactsUI extends JFrame {
         JPanel panel = new JPanel(new BorderLayout(6, 6));
         blockedList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         blockedList.setCellRenderer(new ContactRenderer());
+        blockedList.setPrototypeCellValue(ContactRenderer.PROTOTYPE);
         blockedList.addMouseListener(new MouseAdapter() {
             private void maybeShow(MouseEvent e) {
                 if (e.isPopupTrigger()) {
@@ -369,15 +406,34 @@ public class PhoneContactsUI extends JFrame {
             b.setMargin(new Insets(2,2,2,2));
             b.setFocusPainted(false);
             b.addActionListener(e -> jumpToLetter(ch));
+            letterButtons[c - 'A'] = b;
             letters.add(b);
         }
         JButton hash = new JButton("#");
         hash.setMargin(new Insets(2,2,2,2));
         hash.addActionListener(e -> jumpToOther());
+        letterButtons[26] = hash;
         letters.add(hash);
+        // the model keeps its letter counts current, so the bar only re-reads them
+        listModel.addListDataListener(new ListDataListener() {
+            @Override public void intervalAdded(ListDataEvent e) { updateAlphabetBar(); }
+            @Override public void intervalRemoved(ListDataEvent e) { updateAlphabetBar(); }
+            @Override public void contentsChanged(ListDataEvent e) { updateAlphabetBar(); }
+        });
+        updateAlphabetBar();
         return letters;
     }
 
+    // Disables the letters without contacts and shows each letter's count as its tooltip;
+    // ranked results are not in name order, so there is nowhere to jump to
+    private void updateAlphabetBar() {
+        for (int i = 0; i < letterButtons.length; i++) {
+            int count = i < 26 ? listModel.letterCount((char) ('A' + i)) : listModel.otherCount();
+            letterButtons[i].setEnabled(count > 0 && !listModel.isRanked());
+            letterButtons[i].setToolTipText(String.format("%,d contacts", count));
+        }
+    }
+
     private JComponent buildRightPane() {
         JPanel right = new JPanel(new BorderLayout(8, 8));
 
@@ -436,49 +492,111 @@ public class PhoneContactsUI extends JFrame {
         return right;
     }
 
-    private void refreshList() {
-        String q = searchField.getText() == null ? "" : searchField.getText().trim();
+    private void onSearchChanged() {
+        String q = currentQuery();
         boolean favOnly = onlyFavorites.isSelected();
         boolean hideBlk = hideBlocked.isSelected();
-        List<Contact> src;
-        if (q.isEmpty()) src = directory.listAll();
-        else src = directory.search(q);
-        listModel.clear();
+        boolean fuzzy = isFuzzy(q);
+        int idx = tabs == null ? 0 : tabs.getSelectedIndex();
+        if (idx == 1) searchPipeline.submit(() -> findFavorites(q, fuzzy, hideBlk), r -> showFavorites(r, fuzzy));
+        else if (idx == 2) searchPipeline.submit(() -> findBlocked(q, fuzzy), r -> showBlocked(r, fuzzy));
+        else searchPipeline.submit(() -> findContacts(q, fuzzy, favOnly, hideBlk), r -> showContacts(r, fuzzy));
+    }
+
+    private String currentQuery() {
+        return searchField.getText() == null ? "" : searchField.getText().trim();
+    }
+
+    // An empty query lists everyone by name, fuzzy or not
+    private boolean isFuzzy(String q) {
+        return fuzzySearch.isSelected() && !q.isEmpty();
+    }
+
+    // The refresh methods update a list right away and drop any live search still pending for it
+
+    private void refreshList() {
+        searchPipeline.cancel();
+        String q = currentQuery();
+        boolean fuzzy = isFuzzy(q);
+        showContacts(findContacts(q, fuzzy, onlyFavorites.isSelected(), hideBlocked.isSelected()), fuzzy);
+    }
+
+    private void refreshFavoritesList() {
+        searchPipeline.cancel();
+        String q = currentQuery();
+        boolean fuzzy = isFuzzy(q);
+        showFavorites(findFavorites(q, fuzzy, hideBlocked.isSelected()), fuzzy);
+    }
+
+    private void refreshBlockedList() {
+        searchPipeline.cancel();
+        String q = currentQuery();
+        boolean fuzzy = isFuzzy(q);
+        showBlocked(findBlocked(q, fuzzy), fuzzy);
+    }
+
+    // The find methods only read the directory, so the search pipeline may run them off the event thread
+
+    private List<Contact> findContacts(String q, boolean fuzzy, boolean favOnly, boolean hideBlk) {
+        return find(q, fuzzy, c -> (!favOnly || c.isFavorite()) && (!hideBlk || !c.isBlocked()));
+    }
+
+    private List<Contact> findFavorites(String q, boolean fuzzy, boolean hideBlk) {
+        return find(q, fuzzy, c -> c.isFavorite() && (!hideBlk || !c.isBlocked()));
+    }
+
+    private List<Contact> findBlocked(String q, boolean fuzzy) {
+        return find(q, fuzzy, Contact::isBlocked);
+    }
+
+    // Fuzzy results come best first; the filter applies before the limit, so a tab still gets its best matches
+    private List<Contact> find(String q, boolean fuzzy, Predicate<Contact> filter) {
+        if (fuzzy) return directory.fuzzySearch(q, FUZZY_LIMIT, filter);
+        Collection<Contact> src = q.isEmpty() ? directory.sortedView() : directory.search(q);
+        List<Contact> found = new ArrayList<>();
         for (Contact c : src) {
-            if (favOnly && !c.isFavorite()) continue;
-            if (hideBlk && c.isBlocked()) continue;
-            listModel.addElement(c);
+            if (filter.test(c)) found.add(c);
         }
-        if (!listModel.isEmpty()) {
+        return found;
+    }
+
+    // Swapping the whole result into the model costs one change event instead of one per row
+
+    private void showContacts(List<Contact> contacts, boolean ranked) {
+        if (ranked) listModel.setRankedContacts(contacts);
+        else listModel.setContacts(contacts);
+        int row = selectOnRefresh == null ? -1 : listModel.indexOf(selectOnRefresh);
+        selectOnRefresh = null;
+        if (row >= 0) {
+            contactList.setSelectedIndex(row);
+            contactList.ensureIndexIsVisible(row);
+        } else if (!listModel.isEmpty()) {
             contactList.setSelectedIndex(0);
         } else {
+            contactList.clearSelection();
             updateDetails(null);
         }
     }
 
-    private void refreshFavoritesList() {
-        String q = searchField.getText() == null ? "" : searchField.getText().trim();
-        favoritesModel.clear();
-        List<Contact> src = q.isEmpty() ? directory.listAll() : directory.search(q);
-        for (Contact c : src) {
-            if (c.isFavorite() && (!hideBlocked.isSelected() || !c.isBlocked())) favoritesModel.addElement(c);
-        }
+    private void showFavorites(List<Contact> contacts, boolean ranked) {
+        if (ranked) favoritesModel.setRankedContacts(contacts);
+        else favoritesModel.setContacts(contacts);
         if (!favoritesModel.isEmpty()) {
             favoritesList.setSelectedIndex(0);
             favoritesList.ensureIndexIsVisible(0);
+        } else {
+            favoritesList.clearSelection();
         }
     }
 
-    private void refreshBlockedList() {
-        String q = searchField.getText() == null ? "" : searchField.getText().trim();
-        blockedModel.clear();
-        List<Contact> src = q.isEmpty() ? directory.listAll() : directory.search(q);
-        for (Contact c : src) {
-            if (c.isBlocked()) blockedModel.addElement(c);
-        }
+    private void showBlocked(List<Contact> contacts, boolean ranked) {
+        if (ranked) blockedModel.setRankedContacts(contacts);
+        else blockedModel.setContacts(contacts);
         if (!blockedModel.isEmpty()) {
             blockedList.setSelectedIndex(0);
             blockedList.ensureIndexIsVisible(0);
+        } else {
+            blockedList.clearSelection();
         }
     }
 
@@ -504,23 +622,12 @@ public class PhoneContactsUI extends JFrame {
         Contact c = contactList.getSelectedValue();
         if (c == null) return;
         c.setFavorite(!c.isFavorite());
-        updateDetails(c);
-        contactList.repaint();
-        if (onlyFavorites.isSelected() && !c.isFavorite()) {
-            refreshList();
-        }
     }
 
     private void onToggleBlock() {
         Contact c = contactList.getSelectedValue();
         if (c == null) return;
         c.setBlocked(!c.isBlocked());
-        updateDetails(c);
-        contactList.repaint();
-        if (hideBlocked.isSelected() && c.isBlocked()) {
-            refreshList();
-        }
-        refreshBlockedList();
     }
 
     private void onCall() {
@@ -581,20 +688,18 @@ public class PhoneContactsUI extends JFrame {
     private void onShare() {
         Contact c = contactList.getSelectedValue();
         if (c == null) return;
-        String vcard = toVCard(c);
+        String vcard = ContactExporter.toVCard(c);
         Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(vcard), null);
         JOptionPane.showMessageDialog(this, "Contact copied in vCard format to clipboard");
     }
 
-    private static String toVCard(Contact c) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("BEGIN:VCARD\n");
-        sb.append("VERSION:3.0\n");
-        sb.append("FN:").append(c.getName()).append("\n");
-        if (c.getPhoneNumber() != null) sb.append("TEL:").append(c.getPhoneNumber()).append("\n");
-        if (c.getEmail() != null) sb.append("EMAIL:").append(c.getEmail()).append("\n");
-        sb.append("END:VCARD\n");
-        return sb.toString();
+    // The list on the current tab, or null when the tab shows no list
+    private List<Contact> shownContacts() {
+        int idx = tabs.getSelectedIndex();
+        if (idx == 0) return listModel.getContacts();
+        if (idx == 1) return favoritesModel.getContacts();
+        if (idx == 2) return blockedModel.getContacts();
+        return null;
     }
 
     private JPopupMenu createContextMenu() {
@@ -619,17 +724,22 @@ public class PhoneContactsUI extends JFrame {
         if (edited != null) {
             edited.setFavorite(c.isFavorite());
             edited.setBlocked(c.isBlocked());
-            if (!c.getName().equalsIgnoreCase(edited.getName())) {
-                // name changed -> replace via remove+add
-                directory.removeByName(c.getName());
-            }
+            // replace via remove+add; on this thread each reaches the list on its own, so the
+            // row goes away with the selection and comes back unselected
+            directory.removeByName(c.getName());
             try {
                 directory.addContact(edited);
             } catch (DuplicateContactException ex) {
                 JOptionPane.showMessageDialog(this, ex.getMessage(), "Duplicate", JOptionPane.WARNING_MESSAGE);
+                try {
+                    directory.addContact(c);
+                    selectContact(c);
+                } catch (DuplicateContactException ignored) {
+                    // the old name was taken meanwhile; nothing left to restore
+                }
+                return;
             }
-            refreshList();
-            selectByName(edited.getName());
+            selectContact(edited);
         }
     }
 
@@ -638,8 +748,7 @@ public class PhoneContactsUI extends JFrame {
         if (created != null) {
             try {
                 directory.addContact(created);
-                refreshList();
-                selectByName(created.getName());
+                selectContact(created);
             } catch (DuplicateContactException ex) {
                 JOptionPane.showMessageDialog(this, ex.getMessage(), "Duplicate", JOptionPane.WARNING_MESSAGE);
             }
@@ -652,8 +761,6 @@ public class PhoneContactsUI extends JFrame {
         int confirm = JOptionPane.showConfirmDialog(this, "Delete " + c.getName() + "?", "Confirm", JOptionPane.OK_CANCEL_OPTION);
         if (confirm == JOptionPane.OK_OPTION) {
             directory.removeByName(c.getName());
-            refreshList();
-            refreshBlockedList();
         }
     }
 
@@ -661,8 +768,6 @@ public class PhoneContactsUI extends JFrame {
         Contact c = blockedList.getSelectedValue();
         if (c == null) return;
         c.setBlocked(false);
-        refreshBlockedList();
-        refreshList();
     }
 
     private void onDeleteBlockedSelected() {
@@ -671,8 +776,6 @@ public class PhoneContactsUI extends JFrame {
         int confirm = JOptionPane.showConfirmDialog(this, "Delete " + c.getName() + "?", "Confirm", JOptionPane.OK_CANCEL_OPTION);
         if (confirm == JOptionPane.OK_OPTION) {
             directory.removeByName(c.getName());
-            refreshBlockedList();
-            refreshList();
         }
     }
 
@@ -687,7 +790,6 @@ public class PhoneContactsUI extends JFrame {
         try {
             directory.addContact(new Contact(n, ph, em));
             addNameField.setText(""); addPhoneField.setText(""); addEmailField.setText("");
-            refreshList();
             tabs.setSelectedIndex(0); // switch back to All
         } catch (DuplicateContactException ex) {
             JOptionPane.showMessageDialog(this, ex.getMessage(), "Duplicate", JOptionPane.WARNING_MESSAGE);
@@ -707,36 +809,140 @@ public class PhoneContactsUI extends JFrame {
         }
     }
 
+    @Override
+    public void directoryLoading(int contacts, int percent) {
+        loading = true;
+        setTitle("Contacts (loading " + percent + "%)");
+        refreshKeepingPlace();
+    }
+
+    @Override
+    public void directoryLoaded() {
+        loading = false;
+        setTitle("Contacts");
+        autoSaver.start();
+        refreshKeepingPlace();
+    }
+
+    // Refreshes the current tab while rows are still arriving, without taking the user back
+    // to the first row: the selected contact stays selected and the contact at the top of
+    // the list stays at the top, wherever the new rows push them
+    private void refreshKeepingPlace() {
+        int idx = tabs.getSelectedIndex();
+        JList<Contact> list = idx == 0 ? contactList : idx == 1 ? favoritesList : idx == 2 ? blockedList : null;
+        if (list == null) {
+            onTabChanged();
+            return;
+        }
+        ContactListModel model = (ContactListModel) list.getModel();
+        Contact selected = list.getSelectedValue();
+        int top = list.getFirstVisibleIndex();
+        Contact topContact = top >= 0 ? model.getElementAt(top) : null;
+        onTabChanged();
+        int row = selected == null ? -1 : model.indexOf(selected);
+        if (row >= 0) list.setSelectedIndex(row);
+        int newTop = topContact == null ? -1 : model.indexOf(topContact);
+        if (newTop < 0) return;
+        // the list only takes its new height once it is laid out again
+        SwingUtilities.invokeLater(() -> {
+            Rectangle cell = list.getCellBounds(newTop, newTop);
+            if (cell != null) list.scrollRectToVisible(new Rectangle(cell.x, cell.y, cell.width, list.getVisibleRect().height));
+        });
+    }
+
+    @Override
+    public void directoryLoadFailed(File file, Exception e) {
+        loading = false;
+        unloadedFile = file;
+        setTitle("Contacts (not saved)");
+        onTabChanged();
+        replaceUnloadedFile(e);
+    }
+
+    private void replaceUnloadedFile(Exception failure) {
+        if (!DirectoryLoader.confirmReplace(this, unloadedFile, failure)) return;
+        unloadedFile = null;
+        setTitle("Contacts");
+        autoSaver.startReplacing();
+    }
+
+    // Patches each list in place; a contact's row moves only when it starts or stops matching
+    @Override
+    public void contactsChanged(List<DirectoryEvent> events) {
+        // while loading, the loader refreshes the lists chunk by chunk
+        if (loading) return;
+        // a search result still on its way would overwrite the patches, and ranked
+        // fuzzy results have no place to patch a contact into
+        if (events.size() > PATCH_LIMIT || !searchPipeline.isIdle()
+                || listModel.isRanked() || favoritesModel.isRanked() || blockedModel.isRanked()) {
+            contactsReset();
+            return;
+        }
+        String q = currentQuery();
+        boolean favOnly = onlyFavorites.isSelected();
+        boolean hideBlk = hideBlocked.isSelected();
+        for (DirectoryEvent e : events) {
+            listModel.apply(e, c -> matchesQuery(c, q) && (!favOnly || c.isFavorite()) && (!hideBlk || !c.isBlocked()));
+            favoritesModel.apply(e, c -> matchesQuery(c, q) && c.isFavorite() && (!hideBlk || !c.isBlocked()));
+            blockedModel.apply(e, c -> matchesQuery(c, q) && c.isBlocked());
+        }
+        updateDetails(contactList.getSelectedValue());
+        refreshStatsPanel();
+    }
+
+    @Override
+    public void contactsReset() {
+        if (loading) return;
+        refreshStatsPanel();
+        onSearchChanged();
+    }
+
+    private static boolean matchesQuery(Contact c, String q) {
+        return q.isEmpty() || c.matches(q);
+    }
+
     private void onSave() {
+        if (unloadedFile != null) {
+            replaceUnloadedFile(null);
+        } else {
+            autoSaver.saveNow();
+        }
+    }
+
+    @Override
+    public void directorySaved(File file) {
+        JOptionPane.showMessageDialog(this, "Saved to " + file.getPath());
+    }
+
+    @Override
+    public void directorySaveFailed(File file, IOException e) {
+        JOptionPane.showMessageDialog(this, "Failed to save: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    // Last chance to save edits the autosave has not written yet
+    private void onClose() {
         try {
-            directory.saveToFile(dataFile);
-            JOptionPane.showMessageDialog(this, "Saved to " + dataFile.getPath());
+            autoSaver.close();
         } catch (IOException ex) {
             JOptionPane.showMessageDialog(this, "Failed to save: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
     private void jumpToLetter(char ch) {
-        int target = -1;
-        String s = String.valueOf(ch).toLowerCase(Locale.ROOT);
-        for (int i = 0; i < listModel.size(); i++) {
-            String name = listModel.get(i).getName();
-            if (name != null && name.toLowerCase(Locale.ROOT).startsWith(s)) {
-                target = i; break;
-            }
-        }
+        jumpTo(listModel.firstIndexOf(ch));
+    }
+
+    private void jumpToOther() {
+        jumpTo(listModel.firstOtherIndex());
+    }
+
+    private void jumpTo(int target) {
         if (target >= 0) {
             contactList.setSelectedIndex(target);
             contactList.ensureIndexIsVisible(target);
         }
     }
 
-    private void jumpToOther() {
-        if (listModel.isEmpty()) return;
-        contactList.setSelectedIndex(0);
-        contactList.ensureIndexIsVisible(0);
-    }
-
     private void onThemeChanged() {
         String name = (String) themeSelect.getSelectedItem();
         boolean dark = darkToggle.isSelected();
@@ -750,13 +956,15 @@ public class PhoneContactsUI extends JFrame {
         repaint();
     }
 
-    private void selectByName(String name) {
-        for (int i = 0; i < listModel.size(); i++) {
-            if (listModel.get(i).getName().equalsIgnoreCase(name)) {
-                contactList.setSelectedIndex(i);
-                contactList.ensureIndexIsVisible(i);
-                return;
-            }
+    // Finds the contact's row by binary search in name order. When the list is about to be
+    // replaced by a search result, the contact is selected in that instead.
+    private void selectContact(Contact c) {
+        int row = listModel.indexOf(c);
+        if (row >= 0) {
+            contactList.setSelectedIndex(row);
+            contactList.ensureIndexIsVisible(row);
+        } else if (!searchPipeline.isIdle()) {
+            selectOnRefresh = c;
         }
     }
 
@@ -803,30 +1011,85 @@ public class PhoneContactsUI extends JFrame {
         return Math.round(part * 100f / total);
     }
 
-    private static class ContactRenderer extends DefaultListCellRenderer {
+    /**
+     * Paints a row straight from the contact's fields: a star for favorites, the name,
+     * "(blocked)", then the phone number or email. Nothing is parsed or laid out per row,
+     * and the prototype sizes every row once, so scrolling only costs the visible text.
+     */
+    private static class ContactRenderer extends JComponent implements ListCellRenderer<Contact> {
+        // Sizes every row, so the list never has to measure the rows themselves
+        static final Contact PROTOTYPE = new Contact("Prototype Contact Name", "+1 (555) 555-5555", null);
+        private static final String STAR = "\u2605 ";
+        private static final String BLOCKED = " (blocked)";
+        private static final String SEPARATOR = "  \u00B7  ";
+        private static final Color STAR_COLOR = new Color(0xF5B301); // golden star
+        private static final Color BLOCKED_COLOR = new Color(0x999999);
+        private static final Color BLOCKED_TEXT = new Color(130, 130, 130);
+        private static final Insets PADDING = new Insets(6, 10, 6, 10);
+        // The desktop's text antialiasing, which labels pick up on their own
+        private static final Map<?, ?> TEXT_HINTS =
+                (Map<?, ?>) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+
+        private Contact contact;
+
+        ContactRenderer() {
+            setOpaque(true);
+        }
+
         @Override
-        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
-            JLabel lbl = (JLabel) super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-            lbl.setBorder(BorderFactory.createEmptyBorder(6, 10, 6, 10));
-            lbl.setOpaque(true);
-            if (value instanceof Contact) {
-                Contact c = (Contact) value;
-                String star = c.isFavorite() ? "<span style='color:#F5B301'>★ </span>" : ""; // golden star
-                String secondary = c.getPhoneNumber() != null ? c.getPhoneNumber() : (c.getEmail() != null ? c.getEmail() : "");
-                String name = c.getName();
-                String blocked = c.isBlocked() ? " <span style='color:#999'>(blocked)</span>" : "";
-                String txt = "<html>" + star + name + blocked + (secondary.isEmpty() ? "" : "  ·  " + secondary) + "</html>";
-                lbl.setText(txt);
-                if (!isSelected) {
-                    if (c.isBlocked()) lbl.setForeground(new Color(130,130,130));
-                }
+        public Component getListCellRendererComponent(JList<? extends Contact> list, Contact value, int index, boolean isSelected, boolean cellHasFocus) {
+            contact = value;
+            setFont(list.getFont());
+            setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
+            setForeground(isSelected ? list.getSelectionForeground() : value.isBlocked() ? BLOCKED_TEXT : list.getForeground());
+            setBorder(cellHasFocus ? UIManager.getBorder("List.focusCellHighlightBorder") : null);
+            return this;
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            FontMetrics fm = getFontMetrics(getFont());
+            int width = PADDING.left + fm.stringWidth(STAR) + fm.stringWidth(contact.getName()) + fm.stringWidth(BLOCKED);
+            String secondary = secondary(contact);
+            if (secondary != null) width += fm.stringWidth(SEPARATOR) + fm.stringWidth(secondary);
+            return new Dimension(width + PADDING.right, PADDING.top + fm.getHeight() + PADDING.bottom);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Graphics2D g2 = (Graphics2D) g;
+            g2.setColor(getBackground());
+            g2.fillRect(0, 0, getWidth(), getHeight());
+            if (TEXT_HINTS != null) g2.addRenderingHints(TEXT_HINTS);
+            g2.setFont(getFont());
+            FontMetrics fm = g2.getFontMetrics();
+            int x = PADDING.left;
+            int y = (getHeight() - fm.getHeight()) / 2 + fm.getAscent();
+            if (contact.isFavorite()) x = draw(g2, STAR, STAR_COLOR, x, y);
+            x = draw(g2, contact.getName(), getForeground(), x, y);
+            if (contact.isBlocked()) x = draw(g2, BLOCKED, BLOCKED_COLOR, x, y);
+            String secondary = secondary(contact);
+            if (secondary != null && x < getWidth()) {
+                x = draw(g2, SEPARATOR, getForeground(), x, y);
+                draw(g2, secondary, getForeground(), x, y);
             }
-            return lbl;
+        }
+
+        // Draws s at x and returns where the next text starts
+        private static int draw(Graphics2D g2, String s, Color color, int x, int y) {
+            g2.setColor(color);
+            g2.drawString(s, x, y);
+            return x + g2.getFontMetrics().stringWidth(s);
+        }
+
+        private static String secondary(Contact c) {
+            String s = c.getPhoneNumber() != null ? c.getPhoneNumber() : c.getEmail();
+            return s == null || s.isEmpty() ? null : s;
         }
     }
     // Stats tab (embedded panel similar to StatsFrame)
     private JPanel statsPanel;
-    private JLabel totalLblTab, favLblTab, blockedLblTab;
+    private JLabel totalLblTab, favLblTab, blockedLblTab, phoneLblTab, emailLblTab;
     private JProgressBar favBarTab, blockedBarTab;
 
     private JComponent buildStatsPane() {
@@ -838,6 +1101,8 @@ public class PhoneContactsUI extends JFrame {
         totalLblTab = new JLabel();
         favLblTab = new JLabel();
         blockedLblTab = new JLabel();
+        phoneLblTab = new JLabel();
+        emailLblTab = new JLabel();
         favBarTab = new JProgressBar(0,100);
         blockedBarTab = new JProgressBar(0,100);
         gc.gridx=0; gc.gridy=0; statsPanel.add(new JLabel("Total"), gc);
@@ -846,21 +1111,25 @@ public class PhoneContactsUI extends JFrame {
         gc.gridx=1; statsPanel.add(favLblTab, gc);
         gc.gridx=0; gc.gridy=2; statsPanel.add(new JLabel("Blocked"), gc);
         gc.gridx=1; statsPanel.add(blockedLblTab, gc);
-        gc.gridx=0; gc.gridy=3; gc.gridwidth=2; gc.fill=GridBagConstraints.HORIZONTAL; statsPanel.add(favBarTab, gc);
-        gc.gridy=4; statsPanel.add(blockedBarTab, gc);
+        gc.gridx=0; gc.gridy=3; statsPanel.add(new JLabel("With phone"), gc);
+        gc.gridx=1; statsPanel.add(phoneLblTab, gc);
+        gc.gridx=0; gc.gridy=4; statsPanel.add(new JLabel("With email"), gc);
+        gc.gridx=1; statsPanel.add(emailLblTab, gc);
+        gc.gridx=0; gc.gridy=5; gc.gridwidth=2; gc.fill=GridBagConstraints.HORIZONTAL; statsPanel.add(favBarTab, gc);
+        gc.gridy=6; statsPanel.add(blockedBarTab, gc);
         refreshStatsPanel();
         return statsPanel;
     }
 
     private void refreshStatsPanel() {
         if (statsPanel == null) return;
-        int total = directory.size();
-        int fav = 0, blocked = 0;
-        for (Contact c : directory.listAll()) {
-            if (c.isFavorite()) fav++;
-            if (c.isBlocked()) blocked++;
-        }
+        DirectoryStats stats = directory.stats();
+        int total = stats.getTotal();
+        int fav = stats.getFavorites(), blocked = stats.getBlocked();
+        int withPhone = stats.getWithPhone(), withEmail = stats.getWithEmail();
         totalLblTab.setText(String.valueOf(total));
+        phoneLblTab.setText(withPhone + " (" + percent(withPhone, total) + "%)");
+        emailLblTab.setText(withEmail + " (" + percent(withEmail, total) + "%)");
         favLblTab.setText(fav + " (" + percent(fav, total) + "%)");
         blockedLblTab.setText(blocked + " (" + percent(blocked, total) + "%)");
         favBarTab.setValue(percent(fav, total));
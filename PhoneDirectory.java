@@ -1,20 +1,116 @@
 package com.example.phonedir;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 public class PhoneDirectory implements Serializable {
     private static final long serialVersionUID = 1L;
 
-    private final Map<String, Contact> entries = new HashMap<>();
+    // Case-insensitive name order; ties are broken by the exact name so distinct contacts never collide
+    static final Comparator<String> NAME_ORDER =
+            String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+    static final Comparator<Contact> BY_NAME = Comparator.comparing(Contact::getName, NAME_ORDER);
+
+    private static final int LOCK_STRIPES = 64;
+    // How many contacts a background load reads between progress reports
+    private static final int LOAD_CHUNK = 10_000;
+    // Below this many contacts to check, splitting a search costs more than it saves
+    static final int PARALLEL_THRESHOLD = 20_000;
+    // Smallest slice of a parallel search, and how many slices each worker gets at most
+    private static final int MIN_SLICE = 2_048, SLICES_PER_WORKER = 8;
+    // Slots of the live counters; the initials histogram follows the fixed ones
+    private static final int FAVORITES = 0, BLOCKED = 1, WITH_PHONE = 2, WITH_EMAIL = 3, INITIALS = 4;
+
+    private final Map<String, Contact> entries;
+    // Identifies the last snapshot written for the journal; a log is replayed only on its own snapshot
+    private long journalEpoch;
+
+    // Derived from entries; rebuilt after deserialization
+    private transient ContactIds ids;
+    private transient TrigramIndex searchIndex;
+    private transient PhoneIndex phoneIndex;
+    private transient FuzzyIndex fuzzyIndex;
+    private transient NavigableMap<String, Contact> byName;
+    // Array copy of byName for positional access; null whenever a mutation made it stale
+    private transient Contact[] sortedCache;
+    // Live aggregates behind stats(); a contact's share changes under its own monitor,
+    // which its flag setters hold too, so a flag change cannot race its add or remove
+    private transient AtomicIntegerArray counters;
+    // Bumped after each change is in place and journaled, see getGeneration()
+    private transient AtomicLong generation;
+    private transient CopyOnWriteArrayList<DirectoryListener> listeners;
+    private transient volatile DirectoryJournal journal;
+    // Compresses full snapshots when set; null writes them plain
+    private transient volatile SnapshotCodec snapshotCodec;
+    // Writers to the same key hold the same stripe; null for a single-threaded directory
+    private transient Object[] locks;
+    // Set while loadConcurrently fills the directory. Keys other threads change meanwhile are
+    // remembered so the load leaves them alone, and force a full snapshot once it is over.
+    private transient volatile Thread loadingThread;
+    private transient Set<String> changedWhileLoading;
+    private transient boolean unjournaledChanges;
+    // Every change up to this generation was on disk when the journal was last enabled
+    private transient volatile long journaledGeneration;
+
+    public PhoneDirectory() {
+        this(false);
+    }
+
+    // A concurrent directory keeps every structure in a thread-safe map and stripes its writers
+    PhoneDirectory(boolean concurrent) {
+        entries = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+        ids = new ContactIds();
+        searchIndex = new TrigramIndex(ids, concurrent);
+        phoneIndex = new PhoneIndex(concurrent);
+        counters = new AtomicIntegerArray(INITIALS + DirectoryStats.INITIALS);
+        generation = new AtomicLong();
+        listeners = new CopyOnWriteArrayList<>();
+        byName = concurrent ? new ConcurrentSkipListMap<>(NAME_ORDER) : new TreeMap<>(NAME_ORDER);
+        fuzzyIndex = new FuzzyIndex(byName.values(), concurrent);
+        if (concurrent) {
+            locks = new Object[LOCK_STRIPES];
+            for (int i = 0; i < locks.length; i++) locks[i] = new Object();
+        }
+    }
 
     public void addContact(Contact contact) throws DuplicateContactException {
         if (contact == null) throw new IllegalArgumentException("contact must not be null");
-        String key = normalizeKey(contact.getName());
-        if (entries.containsKey(key)) {
-            throw new DuplicateContactException("Duplicate contact: " + contact.getName());
+        String key = keyOf(contact);
+        synchronized (lockFor(key)) {
+            if (entries.putIfAbsent(key, contact) != null) {
+                throw new DuplicateContactException("Duplicate contact: " + contact.getName());
+            }
+            ids.add(contact);
+            searchIndex.add(contact);
+            phoneIndex.add(contact);
+            // into the name order before the fuzzy index, which builds from it
+            byName.put(contact.getName(), contact);
+            fuzzyIndex.add(contact);
+            sortedCache = null;
+            synchronized (contact) {
+                contact.setOwner(this);
+                count(contact, 1);
+                fire(DirectoryEvent.Type.ADDED, contact);
+            }
+            noteChange(key);
+            DirectoryJournal j = journal;
+            if (j != null) j.recordAdd(contact);
+            generation.incrementAndGet();
         }
-        entries.put(key, contact);
     }
 
     public Contact getByName(String name) {
@@ -24,27 +120,299 @@ public class PhoneDirectory implements Serializable {
 
     public boolean removeByName(String name) {
         if (name == null) return false;
-        return entries.remove(normalizeKey(name)) != null;
+        String key = normalizeKey(name);
+        synchronized (lockFor(key)) {
+            // noted even when absent, so a background load does not bring the contact back
+            noteChange(key);
+            Contact removed = entries.remove(key);
+            if (removed == null) return false;
+            // out of lookups first, and its id free again only once no index holds it
+            ids.clear(removed);
+            searchIndex.remove(removed);
+            phoneIndex.remove(removed);
+            byName.remove(removed.getName());
+            fuzzyIndex.remove(removed);
+            ids.release(removed);
+            sortedCache = null;
+            synchronized (removed) {
+                count(removed, -1);
+                if (removed.getOwner() == this) removed.setOwner(null);
+                fire(DirectoryEvent.Type.REMOVED, removed);
+            }
+            DirectoryJournal j = journal;
+            if (j != null) j.recordRemove(removed.getName());
+            generation.incrementAndGet();
+            return true;
+        }
+    }
+
+    // A single-threaded directory never contends, so its own monitor is as good as any
+    private Object lockFor(String key) {
+        return locks == null ? this : locks[key.hashCode() & (locks.length - 1)];
+    }
+
+    private void count(Contact c, int delta) {
+        if (c.isFavorite()) counters.addAndGet(FAVORITES, delta);
+        if (c.isBlocked()) counters.addAndGet(BLOCKED, delta);
+        if (c.getPhoneNumber() != null) counters.addAndGet(WITH_PHONE, delta);
+        if (c.getEmail() != null) counters.addAndGet(WITH_EMAIL, delta);
+        counters.addAndGet(INITIALS + DirectoryStats.initialIndex(c.getName()), delta);
+    }
+
+    /**
+     * Counts the changes made to this directory: every add, remove and flag change bumps
+     * it once the change is complete, journal record included. A save that starts at some
+     * generation therefore holds at least every change up to it, which lets a saver skip
+     * writing when nothing changed since the generation it last saved.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * The generation the file held when {@link #enableJournal(File)} last returned: every
+     * change up to it is in the snapshot or the log. Changes made while the journal was
+     * being enabled may be past it, still buffered in the log, so a saver should start
+     * from this generation rather than the current one.
+     */
+    public long getJournaledGeneration() {
+        return journaledGeneration;
+    }
+
+    /**
+     * Returns the current totals: contacts, favorites, blocked, with and without phone and
+     * email, and how many names start with each letter. This is O(1) in the directory size.
+     */
+    public DirectoryStats stats() {
+        int[] initials = new int[DirectoryStats.INITIALS];
+        for (int i = 0; i < initials.length; i++) initials[i] = counters.get(INITIALS + i);
+        return new DirectoryStats(entries.size(), counters.get(FAVORITES), counters.get(BLOCKED),
+                counters.get(WITH_PHONE), counters.get(WITH_EMAIL), initials);
+    }
+
+    /**
+     * Receives every change to a directory as it happens, on the thread that made it. The
+     * directory calls listeners while it holds the changed contact's locks, so events for
+     * one contact arrive in order; a listener must return quickly and must not modify the
+     * directory. {@link SwingChangeQueue} hands events over to the event thread in batches.
+     */
+    public interface DirectoryListener {
+        void contactsChanged(List<DirectoryEvent> events);
+    }
+
+    public void addDirectoryListener(DirectoryListener listener) {
+        if (listener == null) throw new IllegalArgumentException("listener must not be null");
+        listeners.add(listener);
+    }
+
+    public void removeDirectoryListener(DirectoryListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fire(DirectoryEvent.Type type, Contact contact) {
+        if (listeners.isEmpty()) return;
+        List<DirectoryEvent> events = Collections.singletonList(new DirectoryEvent(type, contact, null));
+        for (DirectoryListener listener : listeners) {
+            listener.contactsChanged(events);
+        }
+    }
+
+    private void noteChange(String key) {
+        Thread loader = loadingThread;
+        if (loader != null && loader != Thread.currentThread()) changedWhileLoading.add(key);
     }
 
     public List<Contact> listAll() {
-        List<Contact> list = new ArrayList<>(entries.values());
-        list.sort(Comparator.comparing(Contact::getName, String.CASE_INSENSITIVE_ORDER));
-        return list;
+        return new ArrayList<>(Arrays.asList(sorted()));
     }
 
+    /**
+     * Read-only live view of all contacts in alphabetical order. Creating it is O(1) and
+     * iterating the first k contacts is O(k); the view must not be iterated while the
+     * directory is being modified.
+     */
+    public Collection<Contact> sortedView() {
+        return Collections.unmodifiableCollection(byName.values());
+    }
+
+    /**
+     * Returns up to {@code limit} contacts in alphabetical order starting at position
+     * {@code offset}, or an empty list when the offset is past the end. A page costs
+     * O(offset + limit), walking the name order, or only O(limit) while the array copy a
+     * full scan caches is still current; a page never copies the whole directory itself.
+     */
+    public List<Contact> listRange(int offset, int limit) {
+        if (offset < 0) throw new IllegalArgumentException("offset must not be negative");
+        if (limit < 0) throw new IllegalArgumentException("limit must not be negative");
+        Contact[] all = locks == null ? sortedCache : null;
+        if (all == null) {
+            List<Contact> page = new ArrayList<>();
+            Iterator<Contact> it = byName.values().iterator();
+            for (int i = 0; i < offset && it.hasNext(); i++) it.next();
+            while (page.size() < limit && it.hasNext()) page.add(it.next());
+            return page;
+        }
+        if (offset >= all.length) return new ArrayList<>();
+        int end = (int) Math.min((long) offset + limit, all.length);
+        return new ArrayList<>(Arrays.asList(all).subList(offset, end));
+    }
+
+    private Contact[] sorted() {
+        // a concurrent directory may change between building the copy and caching it
+        if (locks != null) return byName.values().toArray(new Contact[0]);
+        Contact[] all = sortedCache;
+        if (all == null) {
+            all = byName.values().toArray(new Contact[0]);
+            sortedCache = all;
+        }
+        return all;
+    }
+
+    /**
+     * Returns the contacts whose name, phone or email contains {@code query}, ignoring case,
+     * in alphabetical order. Large searches run on the common fork-join pool.
+     */
     public List<Contact> search(String query) {
+        return search(query, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same as {@link #search(String)}, but when there are many contacts to check (20,000
+     * or more), they are split into slices that the workers of {@code pool} check at the
+     * same time. Each slice is put in name order and the slices are merged as they finish,
+     * so the result is the same as a sequential search.
+     */
+    public List<Contact> search(String query, ForkJoinPool pool) {
+        if (query == null) return new ArrayList<>();
+        // the index only narrows the candidates; matches() stays the source of truth
+        String q = query.toLowerCase();
+        Collection<Contact> candidates = searchIndex.candidates(q);
+        // a full scan walks the name index, so its results come out already sorted
+        boolean scan = candidates == null;
+        int checks = scan ? size() : candidates.size();
+        if (pool.getParallelism() > 1 && checks >= PARALLEL_THRESHOLD) {
+            Contact[] all = scan ? sorted() : candidates.toArray(new Contact[0]);
+            int slice = Math.max(MIN_SLICE, all.length / (pool.getParallelism() * SLICES_PER_WORKER));
+            return pool.invoke(new SearchTask(all, 0, all.length, q, scan, slice));
+        }
         List<Contact> results = new ArrayList<>();
-        for (Contact c : entries.values()) {
-            if (c.matches(query)) {
+        // the cached array is quicker to walk than the tree, where there is one to cache
+        Iterable<Contact> source = !scan ? candidates : locks == null ? Arrays.asList(sorted()) : byName.values();
+        for (Contact c : source) {
+            if (c.matchesLowered(q)) {
                 results.add(c);
             }
         }
         // ensure results are in alphabetical order by name, case-insensitive
-        results.sort(Comparator.comparing(Contact::getName, String.CASE_INSENSITIVE_ORDER));
+        if (!scan) results.sort(BY_NAME);
         return results;
     }
 
+    // Checks contacts[from, to) against a lowercased query, halving the range down to slices
+    private static final class SearchTask extends RecursiveTask<List<Contact>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Contact[] contacts;
+        private final int from, to;
+        private final String query;
+        private final boolean inNameOrder;
+        private final int slice;
+
+        SearchTask(Contact[] contacts, int from, int to, String query, boolean inNameOrder, int slice) {
+            this.contacts = contacts;
+            this.from = from;
+            this.to = to;
+            this.query = query;
+            this.inNameOrder = inNameOrder;
+            this.slice = slice;
+        }
+
+        @Override
+        protected List<Contact> compute() {
+            if (to - from <= slice) {
+                List<Contact> found = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    if (contacts[i].matchesLowered(query)) found.add(contacts[i]);
+                }
+                if (!inNameOrder) found.sort(BY_NAME);
+                return found;
+            }
+            int mid = (from + to) >>> 1;
+            SearchTask left = new SearchTask(contacts, from, mid, query, inNameOrder, slice);
+            left.fork();
+            List<Contact> right = new SearchTask(contacts, mid, to, query, inNameOrder, slice).compute();
+            return merge(left.join(), right);
+        }
+
+        private static List<Contact> merge(List<Contact> a, List<Contact> b) {
+            if (a.isEmpty()) return b;
+            // slices of a scan are consecutive runs of the name order, so they only need joining
+            if (b.isEmpty() || BY_NAME.compare(a.get(a.size() - 1), b.get(0)) < 0) {
+                a.addAll(b);
+                return a;
+            }
+            List<Contact> out = new ArrayList<>(a.size() + b.size());
+            int i = 0, j = 0;
+            while (i < a.size() && j < b.size()) {
+                out.add(BY_NAME.compare(a.get(i), b.get(j)) <= 0 ? a.get(i++) : b.get(j++));
+            }
+            out.addAll(a.subList(i, a.size()));
+            out.addAll(b.subList(j, b.size()));
+            return out;
+        }
+    }
+
+    /**
+     * Typo-tolerant search over names, for when {@link #search(String)} finds nothing
+     * because of a misspelling: "jon smtih" finds "John Smith". Every word of the query
+     * must be within a few edits of a word of the name, in any order. Returns at most
+     * {@code limit} contacts, closest first by {@link Contact#score(String)}, then by name.
+     */
+    public List<Contact> fuzzySearch(String query, int limit) {
+        return fuzzySearch(query, limit, c -> true);
+    }
+
+    /** Same as {@link #fuzzySearch(String, int)}, counting only the contacts {@code filter} accepts. */
+    public List<Contact> fuzzySearch(String query, int limit, Predicate<? super Contact> filter) {
+        if (limit < 0) throw new IllegalArgumentException("limit must not be negative");
+        if (query == null) return new ArrayList<>();
+        return fuzzyIndex.search(FuzzyIndex.tokens(query), limit, filter);
+    }
+
+    /**
+     * Returns the contacts whose phone number has exactly the digits of {@code number},
+     * in alphabetical order. Formatting such as spaces, dashes and brackets is ignored on
+     * both sides, so "(555) 010-1234" finds "555-010-1234".
+     */
+    public List<Contact> findByPhone(String number) {
+        String digits = PhoneIndex.digitsOf(number);
+        return digits == null ? new ArrayList<>() : sortedByName(phoneIndex.exact(digits));
+    }
+
+    /**
+     * Returns the contacts whose phone number starts with the digits of {@code prefix},
+     * e.g. a country or area code, in alphabetical order.
+     */
+    public List<Contact> findByPhonePrefix(String prefix) {
+        String digits = PhoneIndex.digitsOf(prefix);
+        return digits == null ? new ArrayList<>() : sortedByName(phoneIndex.prefix(digits));
+    }
+
+    /**
+     * Returns the contacts whose phone number ends with the digits of {@code suffix}, in
+     * alphabetical order. Matching the last few digits is how a caller ID is resolved when
+     * the incoming number carries a country code the stored one lacks, or the reverse.
+     */
+    public List<Contact> findByPhoneSuffix(String suffix) {
+        String digits = PhoneIndex.digitsOf(suffix);
+        return digits == null ? new ArrayList<>() : sortedByName(phoneIndex.suffix(digits));
+    }
+
+    private static List<Contact> sortedByName(List<Contact> contacts) {
+        contacts.sort(BY_NAME);
+        return contacts;
+    }
+
     // Exception-based helpers for explicit search flows
     public List<Contact> searchOrThrow(String query) throws ContactNotFoundException {
         List<Contact> results = search(query);
@@ -66,31 +434,414 @@ public class PhoneDirectory implements Serializable {
         return entries.size();
     }
 
-    private String normalizeKey(String name) {
+    static String normalizeKey(String name) {
         return name.toLowerCase(Locale.ROOT).trim();
     }
 
-    public void saveToFile(File file) throws IOException {
+    // The contact's lowercased name doubles as its key whenever the two agree, which is
+    // nearly always, so the directory does not hold a second copy of every name
+    private static String keyOf(Contact c) {
+        String key = normalizeKey(c.getName());
+        return key.equals(c.nameKey()) ? c.nameKey() : key;
+    }
+
+    // Called by the contact with its monitor held, after a flag flipped by the given deltas
+    void flagsChanged(Contact contact, int favoriteDelta, int blockedDelta) {
+        if (favoriteDelta != 0) counters.addAndGet(FAVORITES, favoriteDelta);
+        if (blockedDelta != 0) counters.addAndGet(BLOCKED, blockedDelta);
+        fire(DirectoryEvent.Type.FLAG_CHANGED, contact);
+        if (loadingThread != null) noteChange(normalizeKey(contact.getName()));
+        DirectoryJournal j = journal;
+        if (j != null) j.recordFlags(contact);
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Switches to journaled persistence for {@code file}: later changes are buffered as log
+     * records and {@link #saveToFile(File)} on that file only appends them, rewriting the
+     * snapshot when the log grows past it. Call this right after loading the directory from
+     * {@code file}, or on a new directory when the file does not exist yet.
+     */
+    public synchronized void enableJournal(File file) throws IOException {
         if (file == null) throw new IllegalArgumentException("file must not be null");
-        File parent = file.getParentFile();
+        long since = generation.get();
+        // A background load goes on noting other threads' changes until the journal is in
+        // place, as any of them may have found no journal to record it in
+        boolean tracking = loadingThread != null;
+        try {
+            if (tracking && drainChangesWhileLoading()) unjournaledChanges = true;
+            ensureParentExists(file);
+            // a log written against another snapshot was never replayed into this directory,
+            // and one in the older format cannot take more records: keep it beside the file
+            // and write a snapshot the new log can apply to
+            boolean foreignLog = !DirectoryJournal.canOpen(file, journalEpoch);
+            if (foreignLog) DirectoryJournal.setAside(file);
+            // changes made while a background load was running were never journaled
+            if (!file.exists() || unjournaledChanges || foreignLog) {
+                journal = null;
+                compact(file);
+                unjournaledChanges = false;
+                journal = DirectoryJournal.start(file, journalEpoch);
+            } else {
+                journal = DirectoryJournal.open(file, journalEpoch);
+            }
+        } finally {
+            if (tracking) loadingThread = null;
+        }
+        // changes from here on see the journal; those noted meanwhile may not have
+        if (tracking && drainChangesWhileLoading()) compact(file);
+        journaledGeneration = since;
+    }
+
+    // Empties the changes a background load noted, returning whether there were any. Keys
+    // noted while it runs either go now or stay for the next call, never both.
+    private boolean drainChangesWhileLoading() {
+        boolean any = false;
+        for (Iterator<String> it = changedWhileLoading.iterator(); it.hasNext(); ) {
+            it.next();
+            it.remove();
+            any = true;
+        }
+        return any;
+    }
+
+    public boolean isJournaled() {
+        return journal != null;
+    }
+
+    /**
+     * Compresses the full snapshots that later saves write with {@code codec}, or writes
+     * them plain when it is null. Loading handles either, and a directory loaded from a
+     * compressed file keeps its codec. Compressed snapshots are smaller but cost time to
+     * save and load, and {@link MappedDirectory} cannot open them.
+     */
+    public void setSnapshotCodec(SnapshotCodec codec) {
+        if (codec != null) SnapshotCodec.register(codec);
+        snapshotCodec = codec;
+    }
+
+    public SnapshotCodec getSnapshotCodec() {
+        return snapshotCodec;
+    }
+
+    /**
+     * Saves the directory to {@code file}. A journaled directory only appends its changes
+     * to the log; otherwise a full snapshot replaces the file atomically, so a crash during
+     * the save leaves either the old contents or the new ones. The replaced snapshot is
+     * kept as {@code <file>.bak}.
+     */
+    public synchronized void saveToFile(File file) throws IOException {
+        if (file == null) throw new IllegalArgumentException("file must not be null");
+        if (loadingThread != null) throw new IOException("The directory is still loading; save again once it has finished");
+        if (journal != null && journal.isFor(file)) {
+            journal.flush();
+            if (journal.shouldCompact(file.length())) {
+                compact(file);
+            }
+            return;
+        }
+        ensureParentExists(file);
+        // a fresh epoch orphans any log next to the file, which belonged to its old contents;
+        // remembering it lets a later enableJournal on this file append to the right snapshot
+        long epoch = newEpoch();
+        replaceSnapshot(file, epoch);
+        journalEpoch = epoch;
+    }
+
+    // Writes a full snapshot under a new epoch, then starts an empty log for it.
+    // The snapshot is swapped in atomically, and until the log is restarted the old
+    // log's epoch no longer matches, so a crash at any point leaves a loadable pair.
+    private void compact(File file) throws IOException {
+        long epoch = journalEpoch;
+        journalEpoch = newEpoch();
+        try {
+            replaceSnapshot(file, journalEpoch);
+        } catch (IOException e) {
+            journalEpoch = epoch;
+            throw e;
+        }
+        if (journal != null) journal.restart(journalEpoch);
+    }
+
+    /** The copy of the previous snapshot that a save keeps next to {@code file}. */
+    static File backupFileFor(File file) {
+        return new File(file.getPath() + ".bak");
+    }
+
+    // Writes the snapshot to a temp file beside the target and forces it to disk, then
+    // renames it over the target, so readers and crashes only ever see a whole snapshot.
+    // A temp file left by a crash is simply overwritten by the next save.
+    private void replaceSnapshot(File file, long epoch) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                writeSnapshot(out, epoch);
+                out.getChannel().force(true);
+            }
+            backUp(file);
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        forceParent(file);
+    }
+
+    // Keeps the snapshot about to be replaced as <file>.bak. A hard link costs no copy and
+    // survives the rename, since the file name then points at the new snapshot instead.
+    private static void backUp(File file) throws IOException {
+        Path target = file.toPath();
+        if (!Files.exists(target)) return;
+        Path backup = backupFileFor(file).toPath();
+        Files.deleteIfExists(backup);
+        try {
+            Files.createLink(backup, target);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(target, backup, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Makes the rename itself durable. Windows cannot open a directory for this, so there
+    // the rename is as durable as the file system makes it on its own.
+    private static void forceParent(File file) {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent == null) return;
+        try (FileChannel dir = FileChannel.open(parent.toPath(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // not supported here
+        }
+    }
+
+    private static long newEpoch() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+    private static void ensureParentExists(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
         if (parent != null && !parent.exists()) {
             if (!parent.mkdirs()) {
                 throw new IOException("Failed to create directory: " + parent);
             }
         }
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-            oos.writeObject(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        ids = new ContactIds();
+        searchIndex = new TrigramIndex(ids, false);
+        phoneIndex = new PhoneIndex(false);
+        counters = new AtomicIntegerArray(INITIALS + DirectoryStats.INITIALS);
+        generation = new AtomicLong();
+        listeners = new CopyOnWriteArrayList<>();
+        byName = new TreeMap<>(NAME_ORDER);
+        fuzzyIndex = new FuzzyIndex(byName.values(), false);
+        // the keys were read as copies of the names; share the contacts' own instead
+        List<Contact> contacts = new ArrayList<>(entries.values());
+        entries.clear();
+        addAll(contacts);
+    }
+
+    // Fills an empty directory the way a load does: in name order, numbering the contacts
+    // as it goes, so the trigram postings are built in one appending pass rather than a
+    // contact at a time. The fuzzy index builds itself on its first search.
+    private void addAll(Collection<Contact> contacts) {
+        Contact[] sorted = contacts.toArray(new Contact[0]);
+        Arrays.sort(sorted, BY_NAME);
+        ids.addAll(sorted);
+        searchIndex.addAll(sorted);
+        for (Contact c : sorted) {
+            entries.put(keyOf(c), c);
+            phoneIndex.add(c);
+            byName.put(c.getName(), c);
+            c.setOwner(this);
+            count(c, 1);
+        }
+    }
+
+    // Streams all contacts in key order, which is what the snapshot's name index relies on
+    private void writeSnapshot(OutputStream out, long epoch) throws IOException {
+        SnapshotCodec codec = snapshotCodec;
+        CompressedSnapshot.Writer compressed = codec == null ? null : new CompressedSnapshot.Writer(out, codec);
+        DirectorySnapshot.Writer writer = new DirectorySnapshot.Writer(compressed == null ? out : compressed, epoch);
+        for (Contact c : new TreeMap<>(entries).values()) {
+            writer.write(c);
         }
+        writer.finish();
+        if (compressed != null) compressed.finish();
+    }
+
+    // The snapshot the journal belongs to, see DirectoryJournal
+    long journalEpoch() {
+        return journalEpoch;
+    }
+
+    // The plain snapshot stream of a file, decompressed when it was saved with a codec
+    static BufferedInputStream plain(BufferedInputStream in, SnapshotCodec codec) throws IOException {
+        return codec == null ? in : new BufferedInputStream(new CompressedSnapshot.Reader(in, codec), 1 << 16);
     }
 
+    /**
+     * Loads a directory saved by {@link #saveToFile(File)}, replaying its journal if one is
+     * present. Files written by older versions with Java serialization are still accepted.
+     */
     public static PhoneDirectory loadFromFile(File file) throws IOException, ClassNotFoundException {
+        return load(file, null);
+    }
+
+    // Loads into the given empty directory, or into a new single-threaded one when it is null.
+    // The journal is replayed into the decoded contacts, so the directory indexes each once.
+    static PhoneDirectory load(File file, PhoneDirectory into) throws IOException, ClassNotFoundException {
+        if (file == null) throw new IllegalArgumentException("file must not be null");
+        PhoneDirectory dir = into == null ? new PhoneDirectory() : into;
+        Map<String, Contact> contacts;
+        try (BufferedInputStream stored = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+            SnapshotCodec codec = CompressedSnapshot.codecOf(stored);
+            BufferedInputStream in = plain(stored, codec);
+            if (DirectorySnapshot.isSnapshot(in)) {
+                DirectorySnapshot.Reader reader = new DirectorySnapshot.Reader(in);
+                dir.journalEpoch = reader.epoch();
+                contacts = readSnapshot(reader);
+            } else {
+                PhoneDirectory legacy = readSerialized(in);
+                dir.journalEpoch = legacy.journalEpoch;
+                contacts = legacy.entries;
+            }
+            dir.snapshotCodec = codec;
+        }
+        DirectoryJournal.replay(file, dir.journalEpoch, new DirectoryJournal.Target() {
+            @Override
+            public void put(Contact c) {
+                contacts.put(normalizeKey(c.getName()), c);
+            }
+
+            @Override
+            public void remove(String name) {
+                contacts.remove(normalizeKey(name));
+            }
+
+            @Override
+            public void setFlags(String name, boolean favorite, boolean blocked) {
+                Contact c = contacts.get(normalizeKey(name));
+                if (c != null) {
+                    c.setFavorite(favorite);
+                    c.setBlocked(blocked);
+                }
+            }
+        });
+        dir.addAll(contacts.values());
+        return dir;
+    }
+
+    /** Receives progress from a background load, bulk import or export. */
+    public interface LoadListener {
+        void loaded(int contacts, int percent);
+    }
+
+    /**
+     * Fills this directory from {@code file} on the calling thread while other threads
+     * already use it, which needs a {@link ConcurrentPhoneDirectory}. Contacts that other
+     * threads add, remove or flag during the load keep their new state. Saving is refused,
+     * and those changes are tracked, until {@link #enableJournal(File)} is called, which a
+     * successful load must be followed by; a failed one stops tracking right away.
+     */
+    void loadConcurrently(File file, LoadListener listener) throws IOException, ClassNotFoundException {
         if (file == null) throw new IllegalArgumentException("file must not be null");
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-            Object obj = ois.readObject();
-            if (!(obj instanceof PhoneDirectory)) {
-                throw new IOException("Invalid serialized data");
+        if (locks == null) throw new IllegalStateException("Only a concurrent directory can be loaded in the background");
+        changedWhileLoading = ConcurrentHashMap.newKeySet();
+        loadingThread = Thread.currentThread();
+        boolean finished = false;
+        try (FileInputStream fis = new FileInputStream(file);
+             BufferedInputStream stored = new BufferedInputStream(fis, 1 << 16)) {
+            long length = Math.max(1, file.length());
+            int loaded = 0;
+            SnapshotCodec codec = CompressedSnapshot.codecOf(stored);
+            snapshotCodec = codec;
+            BufferedInputStream in = plain(stored, codec);
+            if (DirectorySnapshot.isSnapshot(in)) {
+                DirectorySnapshot.Reader reader = new DirectorySnapshot.Reader(in);
+                journalEpoch = reader.epoch();
+                Contact c;
+                while ((c = reader.next()) != null) {
+                    loadContact(c);
+                    if (++loaded % LOAD_CHUNK == 0) {
+                        listener.loaded(loaded, (int) (fis.getChannel().position() * 100 / length));
+                    }
+                }
+            } else {
+                PhoneDirectory legacy = readSerialized(in);
+                journalEpoch = legacy.journalEpoch;
+                for (Contact c : legacy.entries.values()) {
+                    loadContact(c);
+                }
+            }
+            DirectoryJournal.replay(file, journalEpoch, new DirectoryJournal.Target() {
+                @Override
+                public void put(Contact c) {
+                    loadContact(c);
+                }
+
+                @Override
+                public void remove(String name) {
+                    String key = normalizeKey(name);
+                    synchronized (lockFor(key)) {
+                        if (!changedWhileLoading.contains(key)) removeByName(name);
+                    }
+                }
+
+                @Override
+                public void setFlags(String name, boolean favorite, boolean blocked) {
+                    String key = normalizeKey(name);
+                    synchronized (lockFor(key)) {
+                        Contact c = changedWhileLoading.contains(key) ? null : getByName(name);
+                        if (c != null) {
+                            c.setFavorite(favorite);
+                            c.setBlocked(blocked);
+                        }
+                    }
+                }
+            });
+            finished = true;
+        } finally {
+            if (!finished) loadingThread = null;
+        }
+        listener.loaded(size(), 100);
+    }
+
+    // Adds or replaces a contact read by a background load, unless another thread changed it meanwhile
+    private void loadContact(Contact c) {
+        String key = normalizeKey(c.getName());
+        synchronized (lockFor(key)) {
+            if (changedWhileLoading.contains(key)) return;
+            removeByName(c.getName());
+            try {
+                addContact(c);
+            } catch (DuplicateContactException e) {
+                throw new IllegalStateException(e);
             }
-            return (PhoneDirectory) obj;
         }
     }
+
+    // Decodes the contacts by key, before any of them is indexed
+    private static Map<String, Contact> readSnapshot(DirectorySnapshot.Reader reader) throws IOException {
+        Map<String, Contact> contacts = new HashMap<>();
+        Contact c;
+        while ((c = reader.next()) != null) {
+            if (contacts.put(normalizeKey(c.getName()), c) != null) {
+                throw new IOException("Corrupt snapshot: Duplicate contact: " + c.getName());
+            }
+        }
+        return contacts;
+    }
+
+    // A legacy file is one whole directory written by Java serialization; reading it touches nothing on disk
+    static PhoneDirectory readSerialized(InputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(in);
+        Object obj = ois.readObject();
+        if (!(obj instanceof PhoneDirectory)) {
+            throw new IOException("Invalid serialized data");
+        }
+        return (PhoneDirectory) obj;
+    }
 }
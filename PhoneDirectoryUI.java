@@ -6,14 +6,18 @@ import javax.swing.event.DocumentListener;
 import javax.swing.table.AbstractTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-public class PhoneDirectoryUI extends JFrame {
+public class PhoneDirectoryUI extends JFrame implements DirectoryLoader.View, AutoSaver.View {
     private final PhoneDirectory directory;
-    private final File dataFile;
+    private final AutoSaver autoSaver;
+    // The file the directory failed to load from; nothing is saved over it while set
+    private File unloadedFile;
 
     private final JTextField searchField = new JTextField(20);
     private final JTable table = new JTable();
@@ -26,12 +30,15 @@ public class PhoneDirectoryUI extends JFrame {
     public PhoneDirectoryUI(PhoneDirectory directory, File dataFile) {
         super("Phone Directory");
         this.directory = directory;
-        this.dataFile = dataFile;
 
         applyTheme();
         buildUI();
         refreshTable("");
+        autoSaver = new AutoSaver(directory, dataFile, AutoSaver.DEFAULT_QUIET_MS, this);
         setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override public void windowClosing(WindowEvent e) { onClose(); }
+        });
         setSize(760, 520);
     }
 
@@ -93,11 +100,23 @@ public class PhoneDirectoryUI extends JFrame {
         JButton saveBtn = new JButton(new AbstractAction("Save") {
             @Override public void actionPerformed(ActionEvent e) { onSave(); }
         });
+        JButton exportBtn = new JButton(new AbstractAction("Export...") {
+            @Override public void actionPerformed(ActionEvent e) {
+                ExportWorker.chooseAndExport(PhoneDirectoryUI.this, directory, tableModel.getData());
+            }
+        });
+        JButton importBtn = new JButton(new AbstractAction("Import...") {
+            @Override public void actionPerformed(ActionEvent e) {
+                ImportWorker.chooseAndImport(PhoneDirectoryUI.this, directory, () -> refreshTable(searchField.getText()));
+            }
+        });
 
         JPanel actions = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         actions.add(addBtn);
         actions.add(deleteBtn);
         actions.add(saveBtn);
+        actions.add(importBtn);
+        actions.add(exportBtn);
 
         JPanel bottom = new JPanel(new BorderLayout());
         bottom.add(form, BorderLayout.CENTER);
@@ -145,21 +164,67 @@ public class PhoneDirectoryUI extends JFrame {
     }
 
     private void onSave() {
+        if (unloadedFile != null) {
+            replaceUnloadedFile(null);
+        } else {
+            autoSaver.saveNow();
+        }
+    }
+
+    @Override
+    public void directorySaved(File file) {
+        JOptionPane.showMessageDialog(this, "Saved to " + file.getPath());
+    }
+
+    @Override
+    public void directorySaveFailed(File file, IOException e) {
+        JOptionPane.showMessageDialog(this, "Failed to save: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    // Last chance to save edits the autosave has not written yet
+    private void onClose() {
         try {
-            directory.saveToFile(dataFile);
-            JOptionPane.showMessageDialog(this, "Saved to " + dataFile.getPath());
+            autoSaver.close();
         } catch (IOException ex) {
             JOptionPane.showMessageDialog(this, "Failed to save: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
+    @Override
+    public void directoryLoading(int contacts, int percent) {
+        setTitle("Phone Directory (loading " + percent + "%)");
+        refreshTable(searchField.getText());
+    }
+
+    @Override
+    public void directoryLoaded() {
+        setTitle("Phone Directory");
+        refreshTable(searchField.getText());
+        autoSaver.start();
+    }
+
+    @Override
+    public void directoryLoadFailed(File file, Exception e) {
+        unloadedFile = file;
+        setTitle("Phone Directory (not saved)");
+        refreshTable(searchField.getText());
+        replaceUnloadedFile(e);
+    }
+
+    private void replaceUnloadedFile(Exception failure) {
+        if (!DirectoryLoader.confirmReplace(this, unloadedFile, failure)) return;
+        unloadedFile = null;
+        setTitle("Phone Directory");
+        autoSaver.startReplacing();
+    }
+
     private void refreshTable(String filter) {
         List<Contact> list;
         if (filter == null) filter = "";
         if (filter.isEmpty()) {
-            list = new ArrayList<>(directory.listAll());
+            list = directory.listAll();
         } else {
-            list = new ArrayList<>(directory.search(filter));
+            list = directory.search(filter);
         }
         tableModel.setData(list);
     }
@@ -170,6 +235,7 @@ public class PhoneDirectoryUI extends JFrame {
 
         public void setData(List<Contact> newData) { this.data = newData; fireTableDataChanged(); }
         public Contact getAt(int row) { return data.get(row); }
+        public List<Contact> getData() { return data; }
 
         @Override public int getRowCount() { return data.size(); }
         @Override public int getColumnCount() { return cols.length; }
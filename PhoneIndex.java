@@ -0,0 +1,296 @@
+package com.example.phonedir;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Index of contacts by the digits of their phone number, ignoring any formatting. Numbers
+ * are kept in two radix trees, one over the digits and one over the digits reversed, so
+ * exact, prefix and suffix lookups all walk O(digits) nodes before collecting their
+ * results. Edge labels are short runs of digits that recur all over both trees (area
+ * codes, exchanges, the last few digits), so they are shared through a {@link StringPool}.
+ * Lookups never lock: a node's label never changes, and its children and contacts are
+ * only ever replaced by changed copies, so a lookup walks a tree that was whole at every
+ * step. An edge that splits or merges gets a new node in its parent. A concurrent index
+ * makes its writers take turns.
+ */
+class PhoneIndex {
+    private final Node forward = new Node("");
+    private final Node reverse = new Node("");
+    private final StringPool labels = new StringPool();
+    private final Lock lock;
+
+    PhoneIndex(boolean concurrent) {
+        this.lock = concurrent ? new ReentrantLock() : null;
+    }
+
+    /** Returns only the digits of {@code phone}, or null when there are none. */
+    static String digitsOf(String phone) {
+        if (phone == null) return null;
+        StringBuilder sb = null;
+        for (int i = 0; i < phone.length(); i++) {
+            char ch = phone.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                if (sb == null) sb = new StringBuilder(phone.length());
+                sb.append(ch);
+            }
+        }
+        return sb == null ? null : sb.toString();
+    }
+
+    void add(Contact c) {
+        String digits = digitsOf(c.getPhoneNumber());
+        if (digits == null) return;
+        lockWrite();
+        try {
+            insert(forward, digits, c);
+            insert(reverse, reversed(digits), c);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    void remove(Contact c) {
+        String digits = digitsOf(c.getPhoneNumber());
+        if (digits == null) return;
+        lockWrite();
+        try {
+            delete(forward, digits, c);
+            delete(reverse, reversed(digits), c);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /** Contacts whose number has exactly these digits. */
+    List<Contact> exact(String digits) {
+        List<Contact> out = new ArrayList<>();
+        if (digits.isEmpty()) return out;
+        Node n = find(forward, digits, false);
+        if (n != null) n.collectContacts(out);
+        return out;
+    }
+
+    /** Contacts whose number starts with these digits. */
+    List<Contact> prefix(String digits) {
+        return collect(forward, digits);
+    }
+
+    /** Contacts whose number ends with these digits. */
+    List<Contact> suffix(String digits) {
+        return collect(reverse, reversed(digits));
+    }
+
+    private List<Contact> collect(Node root, String digits) {
+        List<Contact> out = new ArrayList<>();
+        if (digits.isEmpty()) return out;
+        Node n = find(root, digits, true);
+        if (n != null) collectAll(n, out);
+        return out;
+    }
+
+    // Walks down from root along key; with partial set, the key may also end inside an edge
+    private static Node find(Node root, String key, boolean partial) {
+        Node n = root;
+        int i = 0;
+        while (i < key.length()) {
+            Node child = n.child(key.charAt(i));
+            if (child == null) return null;
+            int common = commonPrefix(child.label, key, i);
+            if (common < child.label.length()) {
+                return partial && i + common == key.length() ? child : null;
+            }
+            i += common;
+            n = child;
+        }
+        return n;
+    }
+
+    private static void collectAll(Node n, List<Contact> out) {
+        n.collectContacts(out);
+        Node[] children = n.children;
+        if (children == null) return;
+        for (Node child : children) {
+            if (child != null) collectAll(child, out);
+        }
+    }
+
+    private void insert(Node root, String key, Contact c) {
+        Node n = root;
+        int i = 0;
+        while (i < key.length()) {
+            Node child = n.child(key.charAt(i));
+            if (child == null) {
+                child = new Node(labels.intern(key.substring(i)));
+                n.setChild(child);
+                n = child;
+                break;
+            }
+            int common = commonPrefix(child.label, key, i);
+            if (common < child.label.length()) {
+                // split the edge where the new key leaves it; the lower half is a new node
+                // too, so a lookup already past the parent still finds the whole edge
+                Node lower = new Node(labels.intern(child.label.substring(common)), child.children, child.contacts);
+                Node mid = new Node(labels.intern(child.label.substring(0, common)));
+                mid.setChild(lower);
+                n.setChild(mid);
+                child = mid;
+            }
+            i += common;
+            n = child;
+        }
+        n.addContact(c);
+    }
+
+    private void delete(Node root, String key, Contact c) {
+        Deque<Node> path = new ArrayDeque<>();
+        Node n = root;
+        int i = 0;
+        while (i < key.length()) {
+            Node child = n.child(key.charAt(i));
+            if (child == null || commonPrefix(child.label, key, i) < child.label.length()) return;
+            path.push(n);
+            i += child.label.length();
+            n = child;
+        }
+        if (!n.removeContact(c)) return;
+        // prune nodes left empty, then merge a remaining single child into its parent edge
+        while (!path.isEmpty() && n.contacts == null && n.childCount() == 0) {
+            Node parent = path.pop();
+            parent.removeChild(n.label.charAt(0));
+            n = parent;
+        }
+        if (n != root && n.contacts == null && n.childCount() == 1) {
+            Node only = n.onlyChild();
+            path.peek().setChild(new Node(labels.intern(n.label + only.label), only.children, only.contacts));
+        }
+    }
+
+    private static int commonPrefix(String label, String key, int from) {
+        int max = Math.min(label.length(), key.length() - from);
+        int k = 0;
+        while (k < max && label.charAt(k) == key.charAt(from + k)) k++;
+        return k;
+    }
+
+    private static String reversed(String digits) {
+        return new StringBuilder(digits).reverse().toString();
+    }
+
+    private void lockWrite() {
+        if (lock != null) lock.lock();
+    }
+
+    private void unlockWrite() {
+        if (lock != null) lock.unlock();
+    }
+
+    // A radix tree node: the digits on the edge into it, children by their first digit,
+    // and the contacts whose number ends exactly here. Numbers are nearly always unique, so
+    // that is null, the one contact itself, or an array only when a number is shared.
+    // A shared array is never changed once a lookup can see it, and children only gain
+    // leaves in place.
+    private static final class Node {
+        final String label;
+        volatile Node[] children;
+        volatile Object contacts;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        Node(String label, Node[] children, Object contacts) {
+            this.label = label;
+            this.children = children;
+            this.contacts = contacts;
+        }
+
+        void addContact(Contact c) {
+            if (contacts == null) {
+                contacts = c;
+            } else if (contacts instanceof Contact) {
+                contacts = new Contact[]{(Contact) contacts, c};
+            } else {
+                Contact[] shared = (Contact[]) contacts;
+                shared = Arrays.copyOf(shared, shared.length + 1);
+                shared[shared.length - 1] = c;
+                contacts = shared;
+            }
+        }
+
+        boolean removeContact(Contact c) {
+            if (contacts == c) {
+                contacts = null;
+                return true;
+            }
+            if (!(contacts instanceof Contact[])) return false;
+            Contact[] shared = (Contact[]) contacts;
+            for (int i = 0; i < shared.length; i++) {
+                if (shared[i] != c) continue;
+                if (shared.length == 2) {
+                    contacts = shared[1 - i];
+                } else {
+                    Contact[] rest = new Contact[shared.length - 1];
+                    System.arraycopy(shared, 0, rest, 0, i);
+                    System.arraycopy(shared, i + 1, rest, i, rest.length - i);
+                    contacts = rest;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        // Each reads its field once, as a writer may replace it meanwhile
+        void collectContacts(List<Contact> out) {
+            Object contacts = this.contacts;
+            if (contacts instanceof Contact) {
+                out.add((Contact) contacts);
+            } else if (contacts != null) {
+                Collections.addAll(out, (Contact[]) contacts);
+            }
+        }
+
+        Node child(char digit) {
+            Node[] children = this.children;
+            return children == null ? null : children[digit - '0'];
+        }
+
+        void setChild(Node child) {
+            int digit = child.label.charAt(0) - '0';
+            // a free slot takes a new node in place: a lookup that sees it without its
+            // contacts yet only misses a number that was not there when it started
+            if (children != null && children[digit] == null && child.children == null) {
+                children[digit] = child;
+                return;
+            }
+            Node[] copy = children == null ? new Node[10] : children.clone();
+            copy[digit] = child;
+            children = copy;
+        }
+
+        void removeChild(char digit) {
+            Node[] copy = children.clone();
+            copy[digit - '0'] = null;
+            children = copy;
+            if (childCount() == 0) children = null;
+        }
+
+        int childCount() {
+            Node[] children = this.children;
+            if (children == null) return 0;
+            int count = 0;
+            for (Node child : children) {
+                if (child != null) count++;
+            }
+            return count;
+        }
+
+        Node onlyChild() {
+            for (Node child : children) {
+                if (child != null) return child;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.phonedir;
+
+/**
+ * The typo-tolerant counterpart of {@link Searchable}: rather than a yes or no, says how
+ * far something is from a query, so the closest results can be shown first.
+ */
+public interface Scorable {
+    /** Returned by {@link #score(String)} when the query does not match at all. */
+    int NO_MATCH = -1;
+
+    /** Returns 0 for an exact match, a larger number for a worse one, or {@link #NO_MATCH}. */
+    int score(String query);
+}
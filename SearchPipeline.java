@@ -0,0 +1,107 @@
+package com.example.phonedir;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Runs live searches for a UI without blocking the event thread. Requests are debounced,
+ * so a burst of keystrokes costs one search; a newer request cancels the one in flight,
+ * and only the newest request's result is handed back, on the event thread. A search
+ * that throws is reported the same way, and only if it was the newest; a stale or
+ * cancelled one is dropped. All methods must be called on the event thread.
+ */
+final class SearchPipeline {
+    private final Timer debounce;
+    // null when searches must stay on the event thread (a directory that is not thread-safe)
+    private final ExecutorService executor;
+    private final Consumer<Exception> failed;
+    // Bumped by every request; a result is published only if no request came after it
+    private long generation;
+    // Set from a request until its result is published, or it is cancelled
+    private boolean busy;
+    private Runnable pending;
+    private Future<?> running;
+
+    SearchPipeline(int delayMillis, boolean background, Consumer<Exception> failed) {
+        this.failed = failed;
+        debounce = new Timer(delayMillis, e -> dispatch());
+        debounce.setRepeats(false);
+        executor = background ? Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "contact-search");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    /** Schedules {@code search} once the requests stop for the debounce delay. */
+    <T> void submit(Callable<T> search, Consumer<T> publish) {
+        long gen = ++generation;
+        busy = true;
+        pending = () -> run(gen, search, publish);
+        debounce.restart();
+    }
+
+    /** Drops any pending or running request, e.g. because the view was refreshed directly. */
+    void cancel() {
+        generation++;
+        busy = false;
+        pending = null;
+        debounce.stop();
+        if (running != null) running.cancel(true);
+    }
+
+    /** Whether no request is waiting, running, or about to publish its result. */
+    boolean isIdle() {
+        return !busy;
+    }
+
+    void shutdown() {
+        cancel();
+        if (executor != null) executor.shutdownNow();
+    }
+
+    private void dispatch() {
+        Runnable task = pending;
+        pending = null;
+        if (task != null) task.run();
+    }
+
+    private <T> void run(long gen, Callable<T> search, Consumer<T> publish) {
+        if (executor == null) {
+            busy = false;
+            T result;
+            try {
+                result = search.call();
+            } catch (Exception e) {
+                failed.accept(e);
+                return;
+            }
+            publish.accept(result);
+            return;
+        }
+        if (running != null) running.cancel(true);
+        running = executor.submit(() -> {
+            try {
+                T result = search.call();
+                SwingUtilities.invokeLater(() -> {
+                    if (gen != generation) return;
+                    busy = false;
+                    publish.accept(result);
+                });
+            } catch (Exception e) {
+                // an interrupted search was cancelled, so a newer request has taken over
+                boolean cancelled = Thread.currentThread().isInterrupted();
+                SwingUtilities.invokeLater(() -> {
+                    if (gen != generation) return;
+                    busy = false;
+                    if (!cancelled) failed.accept(e);
+                });
+            }
+        });
+    }
+}
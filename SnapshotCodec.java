@@ -0,0 +1,33 @@
+package com.example.phonedir;
+
+import java.io.IOException;
+
+/**
+ * Block compression for directory snapshots, see {@link PhoneDirectory#setSnapshotCodec}.
+ * A snapshot is compressed in independent chunks of at most {@link #MAX_CHUNK} bytes, so a
+ * codec only ever sees one chunk at a time and needs no state between calls; it must be
+ * safe to use from several threads. The codec's id is stored in the file, and a codec has
+ * to be {@link #register registered} before files written with it can be loaded.
+ */
+public interface SnapshotCodec {
+    int MAX_CHUNK = CompressedSnapshot.CHUNK_SIZE;
+
+    /** Identifies the codec in the files it writes, 1 to 255; {@link DeflateCodec} is 1. */
+    int id();
+
+    String name();
+
+    /**
+     * Compresses {@code src[0, length)} into {@code dst} and returns the compressed length,
+     * or -1 when it does not fit in {@code dst}, in which case the chunk is stored as is.
+     */
+    int compress(byte[] src, int length, byte[] dst) throws IOException;
+
+    /** Decompresses {@code src[0, length)}, which must come to exactly {@code rawLength} bytes, into {@code dst}. */
+    void decompress(byte[] src, int length, byte[] dst, int rawLength) throws IOException;
+
+    /** Makes files written with {@code codec} loadable. Registering another codec under a taken id fails. */
+    static void register(SnapshotCodec codec) {
+        CompressedSnapshot.register(codec);
+    }
+}
@@ -8,6 +8,8 @@ public class StatsFrame extends JFrame {
     private final JLabel totalLbl = new JLabel();
     private final JLabel favLbl = new JLabel();
     private final JLabel blockedLbl = new JLabel();
+    private final JLabel phoneLbl = new JLabel();
+    private final JLabel emailLbl = new JLabel();
     private final JProgressBar favBar = new JProgressBar(0, 100);
     private final JProgressBar blockedBar = new JProgressBar(0, 100);
 
@@ -26,29 +28,32 @@ public class StatsFrame extends JFrame {
         gc.gridx=1; add(favLbl, gc);
         gc.gridx=0; gc.gridy=2; add(new JLabel("Blocked"), gc);
         gc.gridx=1; add(blockedLbl, gc);
+        gc.gridx=0; gc.gridy=3; add(new JLabel("With phone"), gc);
+        gc.gridx=1; add(phoneLbl, gc);
+        gc.gridx=0; gc.gridy=4; add(new JLabel("With email"), gc);
+        gc.gridx=1; add(emailLbl, gc);
 
-        gc.gridx=0; gc.gridy=3; gc.gridwidth=2; gc.fill=GridBagConstraints.HORIZONTAL; add(favBar, gc);
-        gc.gridy=4; add(blockedBar, gc);
+        gc.gridx=0; gc.gridy=5; gc.gridwidth=2; gc.fill=GridBagConstraints.HORIZONTAL; add(favBar, gc);
+        gc.gridy=6; add(blockedBar, gc);
 
         JPanel actions = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         JButton refresh = new JButton("Refresh");
         actions.add(refresh);
-        gc.gridy=5; gc.gridwidth=2; gc.fill=GridBagConstraints.NONE; add(actions, gc);
+        gc.gridy=7; gc.gridwidth=2; gc.fill=GridBagConstraints.NONE; add(actions, gc);
 
         refresh.addActionListener(e -> refreshStats());
         refreshStats();
-        setSize(360, 220);
+        setSize(360, 300);
         setLocationByPlatform(true);
     }
 
     private void refreshStats() {
-        int total = directory.size();
-        int fav = 0, blocked = 0;
-        for (Contact c : directory.listAll()) {
-            if (c.isFavorite()) fav++;
-            if (c.isBlocked()) blocked++;
-        }
+        DirectoryStats stats = directory.stats();
+        int total = stats.getTotal();
+        int fav = stats.getFavorites(), blocked = stats.getBlocked();
         totalLbl.setText(String.valueOf(total));
+        phoneLbl.setText(stats.getWithPhone() + " (" + pct(stats.getWithPhone(), total) + "%)");
+        emailLbl.setText(stats.getWithEmail() + " (" + pct(stats.getWithEmail(), total) + "%)");
         favLbl.setText(fav + " (" + pct(fav, total) + "%)");
         blockedLbl.setText(blocked + " (" + pct(blocked, total) + "%)");
         favBar.setValue(percent(fav, total));
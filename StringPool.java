@@ -0,0 +1,31 @@
+package com.example.phonedir;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Symbol table that hands out one shared instance for equal strings, for values that
+ * repeat across many contacts. Once it holds {@link #MAX_SIZE} strings it starts over:
+ * strings already handed out stay valid and the common ones soon come back, while the
+ * table never grows with the directory. Not thread-safe; callers lock around it.
+ */
+final class StringPool {
+    static final int MAX_SIZE = 1 << 16;
+
+    private final Map<String, String> strings = new HashMap<>();
+
+    /** Returns the pooled instance equal to {@code s}, pooling {@code s} if there is none. */
+    String intern(String s) {
+        String pooled = strings.putIfAbsent(s, s);
+        if (pooled != null) return pooled;
+        if (strings.size() > MAX_SIZE) {
+            strings.clear();
+            strings.put(s, s);
+        }
+        return s;
+    }
+
+    int size() {
+        return strings.size();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.phonedir;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands a directory's change events to a view on the event thread. Changes made on the
+ * event thread reach the view before the change call returns, so the view can select a
+ * contact it just added. Changes made on other threads are collected and delivered
+ * together, coalesced, at most every {@link #DELIVERY_DELAY_MS} milliseconds. When more
+ * pile up than a view could sensibly patch, it is told to reload instead.
+ */
+final class SwingChangeQueue implements PhoneDirectory.DirectoryListener {
+    /** A window that patches its lists as the directory changes. */
+    interface View {
+        void contactsChanged(List<DirectoryEvent> events);
+        void contactsReset();
+    }
+
+    static final int DELIVERY_DELAY_MS = 100;
+    // Past this many pending events they are dropped and the view reloads instead
+    private static final int MAX_PENDING = 10_000;
+
+    private final View view;
+    private final Timer timer;
+    private List<DirectoryEvent> pending = new ArrayList<>();
+    private boolean overflowed;
+    private boolean scheduled;
+
+    SwingChangeQueue(View view) {
+        this.view = view;
+        timer = new Timer(DELIVERY_DELAY_MS, e -> deliver());
+        timer.setRepeats(false);
+    }
+
+    @Override
+    public void contactsChanged(List<DirectoryEvent> events) {
+        boolean onEdt = SwingUtilities.isEventDispatchThread();
+        synchronized (this) {
+            if (!overflowed) {
+                pending.addAll(events);
+                if (pending.size() > MAX_PENDING) {
+                    overflowed = true;
+                    pending = new ArrayList<>();
+                }
+            }
+            if (!onEdt && !scheduled) {
+                scheduled = true;
+                SwingUtilities.invokeLater(timer::start);
+            }
+        }
+        // anything still pending from other threads goes first, keeping the order
+        if (onEdt) deliver();
+    }
+
+    private void deliver() {
+        List<DirectoryEvent> events;
+        boolean reset;
+        synchronized (this) {
+            events = pending;
+            reset = overflowed;
+            pending = new ArrayList<>();
+            overflowed = false;
+            scheduled = false;
+        }
+        if (reset) {
+            view.contactsReset();
+        } else if (!events.isEmpty()) {
+            view.contactsChanged(DirectoryEvent.coalesce(events));
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.phonedir;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Inverted trigram index over the lowercased name, phone and email of each contact.
+ * Lookups return a superset of the contacts whose fields contain the query, so callers
+ * must still confirm every candidate with {@link Contact#matches(String)}. Each trigram
+ * maps to the sorted ids of its contacts (see {@link ContactIds}) in an {@link IdList},
+ * and the trigrams sit in an open-addressing table keyed by their three packed chars, so
+ * nothing is allocated per contact beyond the ints of its postings. Lookups never lock:
+ * a table only gains trigrams in place and is replaced whole when it grows, and a list
+ * is only appended to in place, any other change storing a changed copy, so a lookup
+ * sees each list as it was at some point during the call. A concurrent index makes its
+ * writers take turns.
+ */
+class TrigramIndex {
+    static final int GRAM = 3;
+    // Marks a free slot; packed trigrams only use the low 48 bits
+    private static final long FREE = -1L;
+
+    private final ContactIds ids;
+    private final Lock lock;
+    private volatile Table table;
+    // Guarded by lock
+    private int used;
+
+    TrigramIndex(ContactIds ids, boolean concurrent) {
+        this.ids = ids;
+        this.lock = concurrent ? new ReentrantLock() : null;
+        clear();
+    }
+
+    void add(Contact c) {
+        long[] gs = gramsOf(c);
+        int id = c.getId();
+        lockWrite();
+        try {
+            for (long g : gs) {
+                int slot = slotFor(g);
+                IdList[] postings = table.postings;
+                postings[slot] = postings[slot].add(id);
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /**
+     * Drops {@code c}, which {@link ContactIds#clear} has already hidden. Its id stays in
+     * the postings until enough of a list has gone stale to purge it, and may meanwhile
+     * be handed to another contact: lookups only promise a superset, so that is harmless.
+     */
+    void remove(Contact c) {
+        long[] gs = gramsOf(c);
+        lockWrite();
+        try {
+            Table t = table;
+            for (long g : gs) {
+                int slot = t.find(g);
+                if (slot >= 0 && t.postings[slot].countRemoval()) {
+                    t.postings[slot] = t.postings[slot].purge(id -> holds(ids.get(id), g));
+                }
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /**
+     * Indexes contacts numbered in increasing order, as {@link ContactIds#addAll} does, in
+     * one pass that only ever appends to the postings and then trims them to size. A
+     * trigram that repeats within a contact finds the contact already at its list's tail,
+     * so the grams are posted straight from the keys without sorting them first.
+     */
+    void addAll(Contact[] contacts) {
+        lockWrite();
+        try {
+            for (Contact c : contacts) {
+                int id = c.getId();
+                appendGrams(c.nameKey(), id);
+                appendGrams(c.phoneKey(), id);
+                appendGrams(c.emailKey(), id);
+            }
+            IdList[] postings = table.postings;
+            for (int i = 0; i < postings.length; i++) {
+                if (postings[i] != null) postings[i] = postings[i].trim();
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    void clear() {
+        lockWrite();
+        try {
+            table = new Table(1024);
+            used = 0;
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /**
+     * Returns the contacts that contain every trigram of the (already lowercased) query,
+     * or null when the query is too short for the index to narrow anything down.
+     */
+    Collection<Contact> candidates(String lowerQuery) {
+        if (lowerQuery.length() < GRAM) return null;
+        Table t = table;
+        IdList[] lists = new IdList[lowerQuery.length() - GRAM + 1];
+        // each list is read up to the size it had when it was picked, never past it
+        int[] sizes = new int[lists.length];
+        int smallest = 0;
+        for (int i = 0; i < lists.length; i++) {
+            int slot = t.find(pack(lowerQuery, i));
+            // a trigram being added may show up before its list does
+            lists[i] = slot < 0 ? null : t.postings[slot];
+            sizes[i] = lists[i] == null ? 0 : lists[i].size();
+            if (sizes[i] == 0) return Collections.emptyList();
+            if (sizes[i] < sizes[smallest]) smallest = i;
+        }
+        // walk the smallest list and seek forward through the others, which are sorted too
+        IdList first = lists[smallest];
+        int[] at = new int[lists.length];
+        List<Contact> result = new ArrayList<>();
+        outer:
+        for (int k = 0; k < sizes[smallest]; k++) {
+            int id = first.get(k);
+            for (int i = 0; i < lists.length; i++) {
+                if (i == smallest) continue;
+                at[i] = lists[i].seek(at[i], sizes[i], id);
+                if (at[i] == sizes[i]) break outer;
+                if (lists[i].get(at[i]) != id) continue outer;
+            }
+            Contact c = ids.get(id);
+            if (c != null) result.add(c);
+        }
+        return result;
+    }
+
+    private void appendGrams(String s, int id) {
+        if (s == null) return;
+        IdList[] postings = table.postings;
+        for (int i = 0; i + GRAM <= s.length(); i++) {
+            int slot = slotFor(pack(s, i));
+            // the table may have grown to make room
+            if (postings != table.postings) postings = table.postings;
+            IdList list = postings[slot];
+            if (list.size() == 0 || list.get(list.size() - 1) != id) postings[slot] = list.append(id);
+        }
+    }
+
+    // A trigram keeps its slot once taken, even with no contacts left: the set of distinct
+    // trigrams is small and mostly stable, so the table is never worth cleaning up
+    private int slotFor(long gram) {
+        Table t = table;
+        int mask = t.grams.length - 1;
+        int slot = hash(gram) & mask;
+        while (t.grams[slot] != FREE) {
+            if (t.grams[slot] == gram) return slot;
+            slot = (slot + 1) & mask;
+        }
+        if (2 * (used + 1) > t.grams.length) {
+            table = t.grown();
+            return slotFor(gram);
+        }
+        t.postings[slot] = IdList.EMPTY;
+        t.grams[slot] = gram;
+        used++;
+        return slot;
+    }
+
+    // Open-addressing slots; a grown table is filled before it is published, so a lookup
+    // always sees the grams and lists of the same table
+    private static final class Table {
+        final long[] grams;
+        final IdList[] postings;
+
+        Table(int capacity) {
+            grams = new long[capacity];
+            Arrays.fill(grams, FREE);
+            postings = new IdList[capacity];
+        }
+
+        // Slot of the gram, or -1 when it has never been indexed
+        int find(long gram) {
+            int mask = grams.length - 1;
+            for (int slot = hash(gram) & mask; ; slot = (slot + 1) & mask) {
+                if (grams[slot] == gram) return slot;
+                if (grams[slot] == FREE) return -1;
+            }
+        }
+
+        Table grown() {
+            Table t = new Table(grams.length * 2);
+            int mask = t.grams.length - 1;
+            for (int i = 0; i < grams.length; i++) {
+                if (grams[i] == FREE) continue;
+                int slot = hash(grams[i]) & mask;
+                while (t.grams[slot] != FREE) slot = (slot + 1) & mask;
+                t.grams[slot] = grams[i];
+                t.postings[slot] = postings[i];
+            }
+            return t;
+        }
+    }
+
+    private static int hash(long gram) {
+        return (int) ((gram * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    // Built from the same lowercased keys Contact.matches uses, so a hit there always shares
+    // our trigrams. Sorted and without repeats, so a contact is posted once per trigram.
+    private static long[] gramsOf(Contact c) {
+        long[] grams = new long[count(c.nameKey()) + count(c.phoneKey()) + count(c.emailKey())];
+        int n = addGrams(grams, 0, c.nameKey());
+        n = addGrams(grams, n, c.phoneKey());
+        n = addGrams(grams, n, c.emailKey());
+        Arrays.sort(grams, 0, n);
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (unique == 0 || grams[i] != grams[unique - 1]) grams[unique++] = grams[i];
+        }
+        return unique == grams.length ? grams : Arrays.copyOf(grams, unique);
+    }
+
+    // Whether the contact still has the gram, so its id belongs in the gram's postings
+    private static boolean holds(Contact c, long gram) {
+        return c != null && (has(c.nameKey(), gram) || has(c.phoneKey(), gram) || has(c.emailKey(), gram));
+    }
+
+    private static boolean has(String s, long gram) {
+        if (s == null) return false;
+        for (int i = 0; i + GRAM <= s.length(); i++) {
+            if (pack(s, i) == gram) return true;
+        }
+        return false;
+    }
+
+    private static int count(String s) {
+        return s == null ? 0 : Math.max(0, s.length() - GRAM + 1);
+    }
+
+    private static int addGrams(long[] grams, int n, String s) {
+        if (s == null) return n;
+        for (int i = 0; i + GRAM <= s.length(); i++) {
+            grams[n++] = pack(s, i);
+        }
+        return n;
+    }
+
+    private static long pack(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    private void lockWrite() {
+        if (lock != null) lock.lock();
+    }
+
+    private void unlockWrite() {
+        if (lock != null) lock.unlock();
+    }
+}
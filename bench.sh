@@ -0,0 +1,17 @@
+#!/usr/bin/env bash
+set -euo pipefail
+
+# Usage: ./bench.sh [BenchmarkClass] [args...]   (default: DirectoryBenchmark)
+OUT=out
+BENCH_OUT=out-bench
+BENCH=${1:-DirectoryBenchmark}
+[ $# -gt 0 ] && shift
+
+mkdir -p "$OUT" "$BENCH_OUT"
+
+# Compile application and benchmark sources
+javac -d "$OUT" $(find src/main/java -name "*.java")
+javac -cp "$OUT" -d "$BENCH_OUT" $(find src/bench/java -name "*.java")
+
+# Run
+java ${JAVA_OPTS:--Xmx8g} -cp "$OUT:$BENCH_OUT" "com.example.phonedir.bench.$BENCH" "$@"
@@ -0,0 +1,96 @@
+package com.example.phonedir.bench;
+
+import com.example.phonedir.ColumnarDirectory;
+import com.example.phonedir.Contact;
+import com.example.phonedir.PhoneDirectory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Row store versus column store: live heap of a synthetic {@link PhoneDirectory} and of a
+ * {@link ColumnarDirectory} holding the same contacts, then the latency of searches that
+ * scan every contact and of a favorites filter on each, checking that both find the same
+ * contacts.
+ *
+ * Usage: ColumnarBenchmark [contacts] [runs]
+ */
+public class ColumnarBenchmark {
+    // One and two letters are below the trigram index, so both directories scan; three hit it on rows
+    private static final String[] QUERIES = {"a", "zq", "n s", "ai"};
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 9;
+
+        long before = liveHeap();
+        PhoneDirectory dir = SyntheticContacts.directory(count, 42);
+        long rows = liveHeap() - before;
+        // measured by what dropping a copy frees, which other heap drift does not skew
+        long columnBytes = liveHeapWith(() -> ColumnarDirectory.of(dir)) - liveHeap();
+        ColumnarDirectory columns = ColumnarDirectory.of(dir);
+        System.out.printf("%,d contacts, median of %d runs%n", count, runs);
+        System.out.printf("heap: PhoneDirectory %.1f MB (%.0f bytes per contact), ColumnarDirectory %.1f MB (%.0f bytes per contact)%n",
+                rows / 1e6, rows / (double) count, columnBytes / 1e6, columnBytes / (double) count);
+
+        System.out.printf("%-28s %10s %14s %14s%n", "operation", "results", "rows ms (p50)", "columns ms (p50)");
+        for (String q : QUERIES) {
+            compare("search \"" + q + "\"", runs, () -> dir.search(q), () -> columns.search(q));
+        }
+        compare("favorites, not blocked", runs,
+                () -> dir.listAll().stream().filter(c -> c.isFavorite() && !c.isBlocked()).collect(Collectors.toList()),
+                () -> columns.search("", true, true));
+        compare("search \"a\", favorites", runs,
+                () -> dir.search("a").stream().filter(Contact::isFavorite).collect(Collectors.toList()),
+                () -> columns.search("a", true, false));
+    }
+
+    private static void compare(String label, int runs, Supplier<List<Contact>> rows, Supplier<List<Contact>> columns) {
+        List<Contact> expected = rows.get();
+        List<Contact> actual = columns.get();
+        if (!names(expected).equals(names(actual))) {
+            throw new AssertionError(label + ": " + expected.size() + " results from rows, " + actual.size() + " from columns");
+        }
+        System.out.printf("%-28s %,10d %14.1f %14.1f%n", label, expected.size(), median(runs, rows), median(runs, columns));
+    }
+
+    private static List<String> names(List<Contact> contacts) {
+        return contacts.stream().map(Contact::getName).collect(Collectors.toList());
+    }
+
+    private static double median(int runs, Supplier<List<Contact>> task) {
+        long[] ns = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            task.get();
+            ns[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(ns);
+        return ns[runs / 2] / 1e6;
+    }
+
+    // Live heap while the object built is still reachable; it no longer is once this returns
+    private static long liveHeapWith(Supplier<Object> build) {
+        Object o = build.get();
+        long live = liveHeap();
+        Reference.reachabilityFence(o);
+        return live;
+    }
+
+    // Collects until three collections in a row free nothing more: garbage is not always
+    // gone after the first full collection, or even the second
+    private static long liveHeap() {
+        long live = Long.MAX_VALUE;
+        for (int i = 0, steady = 0; i < 12 && steady < 3; i++) {
+            System.gc();
+            long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            steady = used < live ? 0 : steady + 1;
+            live = Math.min(live, used);
+        }
+        return live;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.phonedir.bench;
+
+import com.example.phonedir.DeflateCodec;
+import com.example.phonedir.PhoneDirectory;
+import com.example.phonedir.SnapshotCodec;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Size versus time for compressed snapshots: file size, save time and load time of a
+ * synthetic directory saved plain and with deflate at its fastest, default and best
+ * levels.
+ *
+ * Usage: CompressionBenchmark [contacts] [runs]
+ */
+public class CompressionBenchmark {
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        PhoneDirectory dir = SyntheticContacts.directory(count, 42);
+        SnapshotCodec[] codecs = {null, new DeflateCodec(Deflater.BEST_SPEED), new DeflateCodec(),
+                new DeflateCodec(Deflater.BEST_COMPRESSION)};
+
+        System.out.printf("%,d contacts, median of %d runs%n", count, runs);
+        System.out.printf("%-12s %10s %8s %14s %14s%n", "codec", "size (MB)", "ratio", "save ms (p50)", "load ms (p50)");
+        long plainSize = 0;
+        for (SnapshotCodec codec : codecs) {
+            File file = File.createTempFile("phonebook", ".ser");
+            file.deleteOnExit();
+            new File(file.getPath() + ".bak").deleteOnExit();
+            dir.setSnapshotCodec(codec);
+            long[] save = new long[runs];
+            long[] load = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                save[i] = time(() -> dir.saveToFile(file));
+                load[i] = time(() -> PhoneDirectory.loadFromFile(file));
+            }
+            long size = file.length();
+            if (codec == null) plainSize = size;
+            System.out.printf("%-12s %10.1f %7.2fx %14d %14d%n", codec == null ? "none" : codec.name(),
+                    size / 1e6, (double) plainSize / size, median(save), median(load));
+        }
+    }
+
+    private static long median(long[] ms) {
+        long[] sorted = ms.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    interface Task { void run() throws Exception; }
+
+    private static long time(Task task) throws Exception {
+        System.gc();
+        long start = System.nanoTime();
+        task.run();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.phonedir.bench;
+
+import com.example.phonedir.ConcurrentPhoneDirectory;
+import com.example.phonedir.Contact;
+import com.example.phonedir.DuplicateContactException;
+import com.example.phonedir.PhoneDirectory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stress-tests {@link ConcurrentPhoneDirectory} and compares its throughput with the
+ * single-threaded {@link PhoneDirectory}, alone and behind a global lock.
+ *
+ * The stress phase races every thread to add the same names, with readers and flag
+ * toggles running alongside, and fails if any name is added twice or the indexes drift.
+ * The throughput phase runs a read-mostly mix: 94% getByName, 1% search, 4% favorite
+ * toggles and 1% remove plus re-add.
+ *
+ * Usage: ConcurrencyBenchmark [contacts] [seconds per run] [max threads]
+ */
+public class ConcurrencyBenchmark {
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        List<Contact> contacts = SyntheticContacts.generate(count, 42);
+
+        stress(contacts, Math.max(4, maxThreads));
+        System.out.println("stress: ok");
+
+        System.out.printf("%,d contacts, %d s per run%n", count, seconds);
+        System.out.printf("%-30s %8s %14s%n", "directory", "threads", "ops/s");
+        PhoneDirectory plain = fill(new PhoneDirectory(), contacts);
+        run(plain, contacts, 1, 1, false); // warm-up
+        System.out.printf("%-30s %8d %,14d%n", "PhoneDirectory", 1, run(plain, contacts, 1, seconds, false));
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            System.out.printf("%-30s %8d %,14d%n", "PhoneDirectory (synchronized)", threads,
+                    run(plain, contacts, threads, seconds, true));
+        }
+        PhoneDirectory concurrent = fill(new ConcurrentPhoneDirectory(), contacts);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            System.out.printf("%-30s %8d %,14d%n", "ConcurrentPhoneDirectory", threads,
+                    run(concurrent, contacts, threads, seconds, false));
+        }
+    }
+
+    private static void stress(List<Contact> contacts, int threads) throws Exception {
+        ConcurrentPhoneDirectory dir = new ConcurrentPhoneDirectory();
+        AtomicInteger added = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CyclicBarrier start = new CyclicBarrier(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                Random rnd = new Random(seed);
+                for (Contact c : contacts) {
+                    // every thread offers its own copy of every contact; exactly one may win
+                    Contact copy = new Contact(c.getName(), c.getPhoneNumber(), c.getEmail());
+                    try {
+                        dir.addContact(copy);
+                        added.incrementAndGet();
+                    } catch (DuplicateContactException expected) {
+                        // another thread got there first
+                    }
+                    Contact other = contacts.get(rnd.nextInt(contacts.size()));
+                    Contact found = dir.getByName(other.getName());
+                    if (found != null) found.setFavorite(!found.isFavorite());
+                    if (rnd.nextInt(100) == 0) dir.search(other.getName().substring(0, 3));
+                    if (rnd.nextInt(100) == 0) dir.listRange(rnd.nextInt(contacts.size()), 50);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+
+        check(added.get() == contacts.size(), "expected " + contacts.size() + " successful adds, got " + added.get());
+        check(dir.size() == contacts.size(), "size " + dir.size());
+        check(dir.listAll().size() == contacts.size(), "sorted index holds " + dir.listAll().size());
+        check(dir.search("").equals(dir.listAll()), "full search differs from listAll");
+        for (int i = 0; i < contacts.size(); i += 97) {
+            Contact c = dir.getByName(contacts.get(i).getName());
+            check(c != null, "missing " + contacts.get(i).getName());
+            check(dir.search(c.getName()).contains(c), "search index lost " + c.getName());
+        }
+    }
+
+    private static long run(PhoneDirectory dir, List<Contact> contacts, int threads, int seconds, boolean lock)
+            throws Exception {
+        LongAdder ops = new LongAdder();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                long n = 0;
+                while ((n & 0xFF) != 0 || System.nanoTime() < deadline[0]) {
+                    Contact c = contacts.get(rnd.nextInt(contacts.size()));
+                    if (lock) {
+                        synchronized (dir) {
+                            step(dir, c, rnd.nextInt(100));
+                        }
+                    } else {
+                        step(dir, c, rnd.nextInt(100));
+                    }
+                    n++;
+                }
+                ops.add(n);
+                return null;
+            }));
+        }
+        deadline[0] = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        start.countDown();
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+        return ops.sum() / seconds;
+    }
+
+    private static void step(PhoneDirectory dir, Contact c, int dice) {
+        if (dice < 94) {
+            dir.getByName(c.getName());
+        } else if (dice < 95) {
+            dir.search(c.getName().substring(0, 4));
+        } else if (dice < 99) {
+            Contact found = dir.getByName(c.getName());
+            if (found != null) found.setFavorite(!found.isFavorite());
+        } else if (dir.removeByName(c.getName())) {
+            try {
+                dir.addContact(new Contact(c.getName(), c.getPhoneNumber(), c.getEmail()));
+            } catch (DuplicateContactException e) {
+                // re-added by another thread in between
+            }
+        }
+    }
+
+    private static PhoneDirectory fill(PhoneDirectory dir, List<Contact> contacts) throws DuplicateContactException {
+        for (Contact c : contacts) {
+            dir.addContact(new Contact(c.getName(), c.getPhoneNumber(), c.getEmail()));
+        }
+        return dir;
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) throw new AssertionError("stress: " + message);
+    }
+}
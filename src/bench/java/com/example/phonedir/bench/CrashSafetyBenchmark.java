@@ -0,0 +1,105 @@
+package com.example.phonedir.bench;
+
+import com.example.phonedir.Contact;
+import com.example.phonedir.PhoneDirectory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fault injection for {@link PhoneDirectory#saveToFile(File)}: a child JVM saves a
+ * synthetic directory over and over, flipping a favorite between saves, and is killed
+ * with SIGKILL once the snapshot it is writing reaches a random offset, up to and
+ * including the whole snapshot. After every kill the file must still load with every
+ * contact, and so must its {@code .bak}. Reports how far into the write the kills
+ * landed, so the run shows it covered all of it.
+ *
+ * Usage: CrashSafetyBenchmark [contacts] [kills]
+ */
+public class CrashSafetyBenchmark {
+    private static final String WRITER = "--writer";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && WRITER.equals(args[0])) {
+            writer(new File(args[1]));
+            return;
+        }
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int kills = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        File dir = Files.createTempDirectory("crash-safety").toFile();
+        File file = new File(dir, "phonebook.ser");
+        PhoneDirectory original = SyntheticContacts.directory(count, 42);
+        original.saveToFile(file);
+        long size = file.length();
+        File tmp = new File(file.getPath() + ".tmp");
+        System.out.printf("%,d contacts, %.1f MB snapshot, %d kills%n", count, size / 1e6, kills);
+
+        Random rnd = new Random(42);
+        int intact = 0, backups = 0;
+        // how far into a snapshot write the kills landed, in tenths of the snapshot size
+        int[] landed = new int[11];
+        for (int i = 0; i < kills; i++) {
+            // a temp file left by the last kill would look like progress of the next save
+            tmp.delete();
+            long offset = (long) (rnd.nextDouble() * size);
+            Process writer = new ProcessBuilder(javaCommand(), "-cp", System.getProperty("java.class.path"),
+                    CrashSafetyBenchmark.class.getName(), WRITER, file.getPath())
+                    .redirectErrorStream(true).start();
+            BufferedReader out = new BufferedReader(new InputStreamReader(writer.getInputStream()));
+            String line = out.readLine();
+            if (!"ready".equals(line)) throw new IllegalStateException("writer did not start: " + line);
+            long written = 0;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (written < Math.max(1, offset) && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+                written = tmp.length();
+            }
+            writer.destroyForcibly();
+            writer.waitFor(10, TimeUnit.SECONDS);
+            landed[(int) Math.min(10, written * 10 / Math.max(1, size))]++;
+
+            if (loads(file, count)) intact++;
+            else System.out.printf("kill %d: %s did not load after %,d bytes%n", i, file.getName(), written);
+            File backup = new File(file.getPath() + ".bak");
+            if (!backup.exists() || loads(backup, count)) backups++;
+            else System.out.printf("kill %d: %s did not load%n", i, backup.getName());
+        }
+
+        System.out.printf("reloaded intact: %d of %d (backups %d of %d)%n", intact, kills, backups, kills);
+        System.out.print("kills by progress of the write:");
+        for (int d = 0; d < landed.length; d++) {
+            System.out.printf(" %d%%:%d", d * 10, landed[d]);
+        }
+        System.out.println();
+        if (intact < kills || backups < kills) System.exit(1);
+    }
+
+    // Runs in the child JVM until it is killed
+    private static void writer(File file) throws Exception {
+        PhoneDirectory dir = PhoneDirectory.loadFromFile(file);
+        List<Contact> contacts = dir.listAll();
+        System.out.println("ready");
+        System.out.flush();
+        for (int i = 0; ; i++) {
+            Contact c = contacts.get(i % contacts.size());
+            c.setFavorite(!c.isFavorite());
+            dir.saveToFile(file);
+        }
+    }
+
+    private static boolean loads(File file, int count) {
+        try {
+            return PhoneDirectory.loadFromFile(file).size() == count;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static String javaCommand() {
+        return new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.phonedir.bench;
+
+import com.example.phonedir.Contact;
+import com.example.phonedir.DuplicateContactException;
+import com.example.phonedir.PhoneDirectory;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Regression suite for the core {@link PhoneDirectory} operations over synthetic
+ * directories of increasing size. Each operation is warmed up, then timed one call at a
+ * time for a fixed budget; the report gives throughput, latency percentiles and bytes
+ * allocated per call, measured on the benchmark thread like JMH's {@code -prof gc}.
+ *
+ * Usage: DirectoryBenchmark [sizes] [seconds per operation] [operations]
+ * e.g. DirectoryBenchmark 1000,10000,100000,1000000,10000000 2 getByName,search
+ */
+public class DirectoryBenchmark {
+    static final List<String> OPERATIONS = List.of("addContact", "getByName", "search", "fuzzySearch", "findByPhone",
+            "findByPhonePrefix", "findByPhoneSuffix", "listAll", "saveToFile", "loadFromFile");
+    private static final int MAX_SAMPLES = 1 << 20;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    interface Op { long run(int i) throws Exception; }
+
+    // Results are folded into this so the JIT cannot discard the measured calls
+    static long sink;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = Arrays.stream((args.length > 0 ? args[0] : "1000,10000,100000,1000000").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 2;
+        List<String> ops = args.length > 2 ? Arrays.asList(args[2].split(",")) : OPERATIONS;
+        for (String op : ops) {
+            if (!OPERATIONS.contains(op)) throw new IllegalArgumentException("Unknown operation: " + op);
+        }
+
+        System.out.printf("%-18s %10s %14s %10s %10s %10s %10s %14s %12s%n",
+                "operation", "contacts", "ops/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "alloc B/op", "alloc MB/s");
+        for (int size : sizes) {
+            List<Contact> contacts = SyntheticContacts.generate(size, 42);
+            PhoneDirectory dir = fill(contacts);
+            String[] names = contacts.stream().map(Contact::getName).toArray(String[]::new);
+            String[] queries = queries(contacts, 4096);
+            String[] typos = typos(contacts, 4096);
+            String[] phones = contacts.stream().map(Contact::getPhoneNumber).filter(Objects::nonNull).toArray(String[]::new);
+            String[] phoneDigits = Arrays.stream(phones).map(DirectoryBenchmark::digits).toArray(String[]::new);
+            File file = File.createTempFile("phonebook", ".bin");
+            file.deleteOnExit();
+            dir.saveToFile(file);
+
+            for (String op : ops) {
+                switch (op) {
+                    case "addContact":
+                        // one op is a whole directory build, reported per contact added
+                        report(op, size, measure(seconds, i -> fill(contacts).size()), size);
+                        break;
+                    case "getByName":
+                        report(op, size, measure(seconds, i -> dir.getByName(names[i % names.length]).hashCode()), 1);
+                        break;
+                    case "search":
+                        report(op, size, measure(seconds, i -> dir.search(queries[i % queries.length]).size()), 1);
+                        break;
+                    case "fuzzySearch":
+                        // the 50 best matches, as a result list would show
+                        report(op, size, measure(seconds, i -> dir.fuzzySearch(typos[i % typos.length], 50).size()), 1);
+                        break;
+                    case "findByPhone":
+                        report(op, size, measure(seconds, i -> dir.findByPhone(phones[i % phones.length]).size()), 1);
+                        break;
+                    case "findByPhonePrefix":
+                        // country code, area code and exchange, as when filtering by region
+                        report(op, size, measure(seconds, i -> dir.findByPhonePrefix(phoneDigits[i % phoneDigits.length].substring(0, 7)).size()), 1);
+                        break;
+                    case "findByPhoneSuffix":
+                        // the last seven digits, as when matching a caller ID
+                        report(op, size, measure(seconds, i -> {
+                            String d = phoneDigits[i % phoneDigits.length];
+                            return dir.findByPhoneSuffix(d.substring(d.length() - 7)).size();
+                        }), 1);
+                        break;
+                    case "listAll":
+                        report(op, size, measure(seconds, i -> dir.listAll().size()), 1);
+                        break;
+                    case "saveToFile":
+                        report(op, size, measure(seconds, i -> {
+                            dir.saveToFile(file);
+                            return file.length();
+                        }), 1);
+                        break;
+                    case "loadFromFile":
+                        report(op, size, measure(seconds, i -> PhoneDirectory.loadFromFile(file).size()), 1);
+                        break;
+                    default:
+                        throw new AssertionError(op);
+                }
+            }
+            file.delete();
+        }
+    }
+
+    static final class Result {
+        final long[] samples;
+        final int count;
+        final long totalNanos;
+        final long allocatedBytes;
+
+        Result(long[] samples, int count, long totalNanos, long allocatedBytes) {
+            this.samples = samples;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        double percentileMicros(double p) {
+            int n = Math.min(count, samples.length);
+            return samples[Math.min(n - 1, (int) Math.ceil(p * n) - 1)] / 1e3;
+        }
+    }
+
+    /** Warms the operation up for half the budget, then times single calls for the full budget. */
+    static Result measure(double seconds, Op op) throws Exception {
+        long warmupEnd = System.nanoTime() + (long) (seconds * 0.5e9);
+        for (int i = 0; System.nanoTime() < warmupEnd; i++) {
+            sink += op.run(i);
+        }
+        System.gc();
+
+        long[] samples = new long[MAX_SAMPLES];
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        int count = 0;
+        long now = start;
+        while (now < end) {
+            long t0 = System.nanoTime();
+            sink += op.run(count);
+            now = System.nanoTime();
+            // past the sample buffer, keep a uniform reservoir so percentiles stay unbiased
+            int slot = count < MAX_SAMPLES ? count : (int) (Math.random() * (count + 1));
+            if (slot < MAX_SAMPLES) samples[slot] = now - t0;
+            count++;
+        }
+        long allocated = THREADS.getThreadAllocatedBytes(thread) - allocatedBefore;
+        Arrays.sort(samples, 0, Math.min(count, MAX_SAMPLES));
+        return new Result(samples, count, now - start, allocated);
+    }
+
+    private static void report(String op, int size, Result r, int unitsPerOp) {
+        double scale = unitsPerOp;
+        System.out.printf("%-18s %,10d %,14.0f %10.2f %10.2f %10.2f %10.2f %,14.0f %,12.1f%n",
+                op, size,
+                r.count * scale / (r.totalNanos / 1e9),
+                r.percentileMicros(0.50) / scale,
+                r.percentileMicros(0.90) / scale,
+                r.percentileMicros(0.99) / scale,
+                r.percentileMicros(0.999) / scale,
+                (double) r.allocatedBytes / r.count / scale,
+                r.allocatedBytes / 1e6 / (r.totalNanos / 1e9));
+    }
+
+    private static String digits(String phone) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < phone.length(); i++) {
+            char ch = phone.charAt(i);
+            if (ch >= '0' && ch <= '9') sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+    private static PhoneDirectory fill(List<Contact> contacts) throws DuplicateContactException {
+        PhoneDirectory dir = new PhoneDirectory();
+        for (Contact c : contacts) {
+            dir.addContact(new Contact(c.getName(), c.getPhoneNumber(), c.getEmail()));
+        }
+        return dir;
+    }
+
+    // What people type: the start of a first or last name, the last phone digits, an email domain
+    private static String[] queries(List<Contact> contacts, int count) {
+        Random rnd = new Random(7);
+        String[] out = new String[count];
+        for (int i = 0; i < count; i++) {
+            Contact c = contacts.get(rnd.nextInt(contacts.size()));
+            String[] parts = c.getName().split(" ");
+            int kind = rnd.nextInt(4);
+            if (kind == 0 && c.getPhoneNumber() != null) {
+                String phone = c.getPhoneNumber();
+                out[i] = phone.substring(phone.length() - 4);
+            } else if (kind == 1 && c.getEmail() != null) {
+                out[i] = c.getEmail().substring(c.getEmail().indexOf('@'));
+            } else {
+                String part = parts[rnd.nextInt(Math.min(2, parts.length))];
+                out[i] = part.substring(0, Math.min(part.length(), 3 + rnd.nextInt(3)));
+            }
+        }
+        return out;
+    }
+
+    // A first and last name with one typo in one of them: a swapped, dropped or wrong letter
+    private static String[] typos(List<Contact> contacts, int count) {
+        Random rnd = new Random(11);
+        String[] out = new String[count];
+        for (int i = 0; i < count; i++) {
+            String[] parts = contacts.get(rnd.nextInt(contacts.size())).getName().split(" ");
+            int w = rnd.nextInt(2);
+            StringBuilder word = new StringBuilder(parts[w].toLowerCase(Locale.ROOT));
+            int at = rnd.nextInt(word.length() - 1);
+            switch (rnd.nextInt(3)) {
+                case 0:
+                    char ch = word.charAt(at);
+                    word.setCharAt(at, word.charAt(at + 1));
+                    word.setCharAt(at + 1, ch);
+                    break;
+                case 1:
+                    word.deleteCharAt(at);
+                    break;
+                default:
+                    word.setCharAt(at, (char) ('a' + rnd.nextInt(26)));
+            }
+            parts[w] = word.toString();
+            out[i] = parts[0] + " " + parts[1];
+        }
+        return out;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.phonedir.bench;
+
+import com.example.phonedir.PhoneDirectory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+
+/**
+ * Retained heap of a synthetic directory: the live heap after a full GC, before and after
+ * the first fuzzy search builds the fuzzy index, and the top of the class histogram (what
+ * {@code jcmd <pid> GC.class_histogram} prints), with the strings and their byte arrays
+ * summed up per contact.
+ *
+ * Usage: HeapBenchmark [contacts] [histogram rows]
+ */
+public class HeapBenchmark {
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+
+        long before = liveHeap();
+        PhoneDirectory dir = SyntheticContacts.directory(count, 42);
+        long after = liveHeap();
+        dir.fuzzySearch("jon smiht", 10);
+        long fuzzy = liveHeap();
+        String histogram = histogram();
+        Reference.reachabilityFence(dir);
+
+        System.out.printf("%,d contacts: %.1f MB live heap, %.0f bytes per contact%n",
+                count, (after - before) / 1e6, (after - before) / (double) count);
+        System.out.printf("with the fuzzy index built: %.1f MB live heap, %.0f bytes per contact%n",
+                (fuzzy - before) / 1e6, (fuzzy - before) / (double) count);
+        long strings = 0, stringBytes = 0, arrays = 0, arrayBytes = 0;
+        String[] lines = histogram.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            String[] cols = lines[i].trim().split("\\s+");
+            if (cols.length < 4 || !cols[0].endsWith(":")) {
+                if (i < 3) System.out.println(lines[i]);
+                continue;
+            }
+            if (i < 3 + rows) System.out.println(lines[i]);
+            if (cols[3].equals("java.lang.String")) {
+                strings = Long.parseLong(cols[1]);
+                stringBytes = Long.parseLong(cols[2]);
+            } else if (cols[3].equals("[B")) {
+                arrays = Long.parseLong(cols[1]);
+                arrayBytes = Long.parseLong(cols[2]);
+            }
+        }
+        System.out.printf("strings: %,d (%.1f per contact), %.1f MB with their byte arrays (%.0f bytes per contact)%n",
+                strings, strings / (double) count, (stringBytes + arrayBytes) / 1e6,
+                (stringBytes + arrayBytes) / (double) count);
+        System.out.printf("byte arrays: %,d%n", arrays);
+    }
+
+    // Collects until three collections in a row free nothing more: garbage is not always
+    // gone after the first full collection, or even the second
+    private static long liveHeap() {
+        long live = Long.MAX_VALUE;
+        for (int i = 0, steady = 0; i < 12 && steady < 3; i++) {
+            System.gc();
+            long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            steady = used < live ? 0 : steady + 1;
+            live = Math.min(live, used);
+        }
+        return live;
+    }
+
+    // Same as jcmd GC.class_histogram, which also forces a full GC first
+    private static String histogram() throws Exception {
+        return (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                new ObjectName("com.sun.management:type=DiagnosticCommand"), "gcClassHistogram",
+                new Object[]{new String[0]}, new String[]{String[].class.getName()});
+    }
+}
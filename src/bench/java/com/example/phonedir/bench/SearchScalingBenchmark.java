@@ -0,0 +1,52 @@
+package com.example.phonedir.bench;
+
+import com.example.phonedir.PhoneDirectory;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how {@link PhoneDirectory#search(String, ForkJoinPool)} scales with the number
+ * of workers, for two query shapes: a full scan, for queries too short for the trigram
+ * index, and queries whose trigram candidates cover a large part of the directory. One
+ * worker is the sequential search the speedups are relative to.
+ *
+ * Usage: SearchScalingBenchmark [contacts] [seconds per run] [max threads]
+ */
+public class SearchScalingBenchmark {
+    private static final String[] SCAN = {"e", "jo", "a", "5", "ar", "li", "@", "mi"};
+    private static final String[] CANDIDATES = {"son", "gmail", "ill", "mar", "212", "ia."};
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 2;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        PhoneDirectory dir = SyntheticContacts.directory(count, 42);
+
+        System.out.printf("%,d contacts, %s s per run, %d cores%n", count, seconds, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-12s %8s %10s %10s %10s %9s%n", "queries", "threads", "ops/s", "p50 ms", "p99 ms", "speedup");
+        run(dir, "scan", SCAN, seconds, maxThreads);
+        run(dir, "candidates", CANDIDATES, seconds, maxThreads);
+    }
+
+    private static void run(PhoneDirectory dir, String label, String[] queries, double seconds, int maxThreads) throws Exception {
+        double base = 0;
+        for (int threads = 1; threads <= maxThreads; threads = next(threads, maxThreads)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                DirectoryBenchmark.Result r = DirectoryBenchmark.measure(seconds,
+                        i -> dir.search(queries[i % queries.length], pool).size());
+                double p50 = r.percentileMicros(0.50) / 1e3;
+                if (threads == 1) base = p50;
+                System.out.printf("%-12s %8d %,10.1f %10.2f %10.2f %8.2fx%n", label, threads,
+                        r.count / (r.totalNanos / 1e9), p50, r.percentileMicros(0.99) / 1e3, base / p50);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    // Doubles the thread count, stopping at max even when it is not a power of two
+    private static int next(int threads, int max) {
+        return threads < max && threads * 2 > max ? max : threads * 2;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.phonedir.bench;
+
+import com.example.phonedir.ConcurrentPhoneDirectory;
+import com.example.phonedir.PhoneDirectory;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Compares the binary snapshot format with legacy Java serialization: file size and
+ * load time for a synthetic directory. Loading includes building the indexes; "ready"
+ * also counts the first search and fuzzy search, which is when the directory has done
+ * all the work it defers, so it is the time until a user gets their first answers.
+ *
+ * Usage: SnapshotBenchmark [contacts] [runs]
+ */
+public class SnapshotBenchmark {
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        PhoneDirectory dir = SyntheticContacts.directory(count, 42);
+
+        File legacy = File.createTempFile("phonebook", ".ser");
+        File binary = File.createTempFile("phonebook", ".bin");
+        legacy.deleteOnExit();
+        binary.deleteOnExit();
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(legacy)))) {
+            oos.writeObject(dir);
+        }
+        long binarySave = time(() -> dir.saveToFile(binary));
+
+        System.out.printf("%,d contacts%n", count);
+        System.out.printf("%-20s %10s %14s %15s%n", "format", "size (MB)", "load ms (p50)", "ready ms (p50)");
+        row("serialization", legacy, PhoneDirectory::loadFromFile, runs);
+        row("binary v1", binary, PhoneDirectory::loadFromFile, runs);
+        row("binary v1 concurrent", binary, ConcurrentPhoneDirectory::loadFromFile, runs);
+        System.out.printf("binary save: %d ms%n", binarySave);
+    }
+
+    private static void row(String format, File file, Loader loader, int runs) throws Exception {
+        long[] load = new long[runs];
+        long[] ready = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            System.gc();
+            long start = System.nanoTime();
+            PhoneDirectory dir = loader.load(file);
+            load[i] = (System.nanoTime() - start) / 1_000_000;
+            dir.search("smith");
+            dir.fuzzySearch("jon smiht", 10);
+            ready[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        Arrays.sort(load);
+        Arrays.sort(ready);
+        System.out.printf("%-20s %10.1f %14d %15d%n", format, file.length() / 1e6, load[runs / 2], ready[runs / 2]);
+    }
+
+    interface Loader { PhoneDirectory load(File file) throws Exception; }
+
+    interface Task { void run() throws Exception; }
+
+    private static long time(Task task) throws Exception {
+        System.gc();
+        long start = System.nanoTime();
+        task.run();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
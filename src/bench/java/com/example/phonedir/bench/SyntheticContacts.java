@@ -0,0 +1,77 @@
+package com.example.phonedir.bench;
+
+import com.example.phonedir.Contact;
+import com.example.phonedir.DuplicateContactException;
+import com.example.phonedir.PhoneDirectory;
+
+import java.util.*;
+
+/**
+ * Deterministic generator of realistic-looking contacts for benchmarks: skewed first
+ * and last name frequencies, a few dominant email domains, clustered area codes and a
+ * small share of contacts without phone or email.
+ */
+public final class SyntheticContacts {
+    private static final String[] FIRST = {
+            "James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael", "Linda", "William", "Elizabeth",
+            "David", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Charles", "Karen",
+            "Christopher", "Nancy", "Daniel", "Lisa", "Matthew", "Betty", "Anthony", "Margaret", "Mark", "Sandra",
+            "Priya", "Arjun", "Wei", "Mei", "Ahmed", "Fatima", "Carlos", "Sofia", "Yuki", "Hiro",
+            "Olga", "Ivan", "Aisha", "Omar", "Lucas", "Emma", "Noah", "Olivia", "Liam", "Ava"
+    };
+    private static final String[] LAST = {
+            "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+            "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+            "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark", "Ramirez", "Lewis", "Robinson",
+            "Patel", "Kumar", "Wang", "Li", "Zhang", "Chen", "Nguyen", "Kim", "Park", "Singh",
+            "Ivanov", "Sato", "Suzuki", "Khan", "Ali", "Silva", "Santos", "Rossi", "Muller", "Schmidt"
+    };
+    private static final String[] DOMAINS = {
+            "gmail.com", "gmail.com", "gmail.com", "yahoo.com", "outlook.com", "hotmail.com",
+            "icloud.com", "example.com", "company.org", "mail.ru"
+    };
+    private static final int[] AREA_CODES = {212, 310, 415, 312, 617, 206, 512, 305, 404, 718, 646, 213};
+
+    private SyntheticContacts() { }
+
+    public static List<Contact> generate(int count, long seed) {
+        Random rnd = new Random(seed);
+        Map<String, Integer> seen = new HashMap<>(count * 2);
+        List<Contact> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String first = FIRST[skewed(rnd, FIRST.length)];
+            String last = LAST[skewed(rnd, LAST.length)];
+            String base = first + " " + last;
+            // contact apps disambiguate repeated names with a counter; so do we
+            int n = seen.merge(base.toLowerCase(Locale.ROOT), 1, Integer::sum);
+            String name = n == 1 ? base : base + " " + n;
+            String phone = rnd.nextInt(100) < 3 ? null : String.format("+1 (%d) %03d-%04d",
+                    AREA_CODES[skewed(rnd, AREA_CODES.length)], 200 + rnd.nextInt(800), rnd.nextInt(10000));
+            String email = rnd.nextInt(100) < 10 ? null : (first + "." + last + (n == 1 ? "" : String.valueOf(n))).toLowerCase(Locale.ROOT)
+                    + "@" + DOMAINS[rnd.nextInt(DOMAINS.length)];
+            Contact c = new Contact(name, phone, email);
+            c.setFavorite(rnd.nextInt(100) < 5);
+            c.setBlocked(rnd.nextInt(100) < 2);
+            out.add(c);
+        }
+        return out;
+    }
+
+    public static PhoneDirectory directory(int count, long seed) {
+        PhoneDirectory dir = new PhoneDirectory();
+        for (Contact c : generate(count, seed)) {
+            try {
+                dir.addContact(c);
+            } catch (DuplicateContactException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return dir;
+    }
+
+    // Roughly Zipf-like: low indexes are picked far more often than high ones
+    private static int skewed(Random rnd, int n) {
+        double u = rnd.nextDouble();
+        return (int) Math.min(n - 1, Math.floor(n * u * u));
+    }
+}